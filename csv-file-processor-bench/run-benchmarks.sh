@@ -0,0 +1,17 @@
+#!/usr/bin/env bash
+# Executa os benchmarks com o profiler de GC e grava o resultado em results/.
+# Uso: ./run-benchmarks.sh [regex de benchmarks] [opções extras do JMH]
+set -euo pipefail
+
+cd "$(dirname "$0")"
+
+FILTRO="${1:-.*}"
+shift || true
+
+(cd ../csv-file-processor-pub && ./mvnw -q -B install -DskipTests)
+(cd ../csv-file-processor-sub && ./mvnw -q -B install -DskipTests)
+mvn -q -B package
+
+SAIDA="results/$(date +%Y%m%d)-$(git rev-parse --short HEAD).json"
+java -jar target/benchmarks.jar "$FILTRO" -prof gc -rf json -rff "$SAIDA" "$@"
+echo "Resultado gravado em $SAIDA"
@@ -0,0 +1,38 @@
+package br.com.sourcesystems.bench;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Os componentes medidos são beans CDI com {@code @ConfigProperty} em campos privados. Fora do
+ * Quarkus esses campos ficam com o valor padrão do Java, então os benchmarks os preenchem com
+ * os mesmos valores do {@code application.properties}.
+ */
+final class Configuracao {
+
+    private Configuracao() {
+    }
+
+    static <T> T definir(T alvo, String campo, Object valor) {
+        try {
+            Field field = alvo.getClass().getDeclaredField(campo);
+            field.setAccessible(true);
+            field.set(alvo, valor);
+            return alvo;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Campo " + campo + " não encontrado em " + alvo.getClass().getName(), e);
+        }
+    }
+
+    /** Chama o método de inicialização ({@code @PostConstruct}) do bean. */
+    static <T> T iniciar(T alvo, String metodo) {
+        try {
+            Method method = alvo.getClass().getDeclaredMethod(metodo);
+            method.setAccessible(true);
+            method.invoke(alvo);
+            return alvo;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Método " + metodo + " não encontrado em " + alvo.getClass().getName(), e);
+        }
+    }
+}
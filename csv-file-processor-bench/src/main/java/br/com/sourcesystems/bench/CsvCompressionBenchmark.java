@@ -0,0 +1,137 @@
+package br.com.sourcesystems.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+import br.com.sourcesystems.processor.AdaptiveBatchSizer;
+import br.com.sourcesystems.processor.CsvCompression;
+import br.com.sourcesystems.processor.CsvFileProcessorBackPressure;
+import br.com.sourcesystems.processor.CsvParallelReader;
+import br.com.sourcesystems.processor.ExecutionStages;
+import br.com.sourcesystems.processor.LoteArquivo;
+import br.com.sourcesystems.processor.RegistroReaderFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.runtime.configuration.MemorySize;
+
+/**
+ * Leitura sequencial do mesmo CSV sem compressão, em gzip e em zstd pelo
+ * {@link CsvFileProcessorBackPressure}, com a descompressão no executor {@code decompress}.
+ * O setup imprime o tamanho de cada arquivo, que é o total lido do disco por operação; o
+ * resultado é por arquivo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class CsvCompressionBenchmark {
+
+    private static final int TAMANHO_LOTE = 1000;
+
+    @Param({ "1000000" })
+    public int registros;
+
+    @Param({ "32" })
+    public int largura;
+
+    @Param({ "NONE", "GZIP", "ZSTD" })
+    public CsvCompression compressao;
+
+    private File arquivo;
+
+    private CsvFileProcessorBackPressure leitor;
+
+    private ExecutionStages estagios;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Path csv = DadosSinteticos.gerarCsv(registros, largura);
+        arquivo = comprimir(csv, compressao).toFile();
+        System.out.printf("%n%s: %d bytes no disco (%.1f%% do CSV)%n", compressao, arquivo.length(),
+            100.0 * arquivo.length() / Files.size(csv));
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        estagios = new ExecutionStages(meterRegistry);
+        Configuracao.definir(estagios, "concorrenciaParse", 1);
+        Configuracao.definir(estagios, "threadsParse", "virtual");
+        Configuracao.definir(estagios, "concorrenciaDescompressao", 1);
+        Configuracao.definir(estagios, "threadsDescompressao", "platform");
+        Configuracao.definir(estagios, "concorrenciaSerializacao", 1);
+        Configuracao.definir(estagios, "threadsSerializacao", "platform");
+        Configuracao.definir(estagios, "concorrenciaEnvio", 1);
+        Configuracao.definir(estagios, "threadsEnvio", "virtual");
+        Configuracao.definir(estagios, "tempoLimite", Duration.ofSeconds(10));
+        Configuracao.iniciar(estagios, "init");
+
+        RegistroReaderFactory readerFactory = Configuracao.definir(new RegistroReaderFactory(), "tokenizer", true);
+
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(meterRegistry, null);
+        Configuracao.definir(sizer, "tamanhoInicial", TAMANHO_LOTE);
+        Configuracao.definir(sizer, "habilitado", false);
+        Configuracao.definir(sizer, "minimo", 1);
+        Configuracao.definir(sizer, "maximo", TAMANHO_LOTE);
+        Configuracao.definir(sizer, "formato", "json");
+        Configuracao.iniciar(sizer, "init");
+
+        CsvParallelReader parallelReader = new CsvParallelReader(readerFactory, meterRegistry, estagios);
+        leitor = new CsvFileProcessorBackPressure(parallelReader, readerFactory, sizer, meterRegistry, estagios);
+        Configuracao.definir(leitor, "blocoDescompressao", new MemorySize(BigInteger.valueOf(256 * 1024)));
+        Configuracao.definir(leitor, "blocosDescompressao", 8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        estagios.parse().close();
+        estagios.descompressao().close();
+        estagios.serializacao().close();
+        estagios.envio().close();
+    }
+
+    @Benchmark
+    public long ler() {
+        return leitor.lerArquivo(arquivo, null)
+            .collect().last()
+            .map(LoteArquivo::registroFinal)
+            .await().indefinitely();
+    }
+
+    private static Path comprimir(Path csv, CsvCompression compressao) throws IOException {
+        if (!compressao.isComprimido()) {
+            return csv;
+        }
+        Path destino = Files.createTempFile("bench-", compressao.extensao());
+        destino.toFile().deleteOnExit();
+        try (InputStream entrada = Files.newInputStream(csv);
+                OutputStream saida = compressao == CsvCompression.GZIP
+                    ? new GZIPOutputStream(Files.newOutputStream(destino), 64 * 1024)
+                    : new ZstdOutputStream(Files.newOutputStream(destino), 3)) {
+            entrada.transferTo(saida);
+        }
+        return destino;
+    }
+}
@@ -0,0 +1,142 @@
+package br.com.sourcesystems.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.sourcesystems.processor.AdaptiveBatchSizer;
+import br.com.sourcesystems.processor.CsvFileProcessor;
+import br.com.sourcesystems.processor.CsvFileProcessorBackPressure;
+import br.com.sourcesystems.processor.CsvParallelReader;
+import br.com.sourcesystems.processor.ExecutionStages;
+import br.com.sourcesystems.processor.LoteArquivo;
+import br.com.sourcesystems.processor.Registro;
+import br.com.sourcesystems.processor.RegistroReaderFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.runtime.configuration.MemorySize;
+
+/**
+ * Leitura de um arquivo inteiro até a lista de lotes, em cada leitor do publicador:
+ * {@link CsvFileProcessor}, {@link CsvFileProcessorBackPressure} sequencial e com a leitura
+ * paralela por faixas. {@code tokenizador} alterna entre o tokenizador especializado e o
+ * commons-csv; {@code largura} muda o tamanho dos campos de texto.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class CsvParseBenchmark {
+
+    private static final int TAMANHO_LOTE = 1000;
+
+    @Param({ "100000" })
+    public int registros;
+
+    @Param({ "8", "32", "128" })
+    public int largura;
+
+    @Param({ "true", "false" })
+    public boolean tokenizador;
+
+    private File arquivo;
+
+    private CsvFileProcessor csvFileProcessor;
+
+    private CsvFileProcessorBackPressure backPressure;
+
+    private CsvFileProcessorBackPressure backPressureParalelo;
+
+    private ExecutionStages estagios;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        arquivo = DadosSinteticos.gerarCsv(registros, largura).toFile();
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        estagios = new ExecutionStages(meterRegistry);
+        Configuracao.definir(estagios, "concorrenciaParse", 4);
+        Configuracao.definir(estagios, "threadsParse", "virtual");
+        Configuracao.definir(estagios, "concorrenciaDescompressao", 1);
+        Configuracao.definir(estagios, "threadsDescompressao", "platform");
+        Configuracao.definir(estagios, "concorrenciaSerializacao", 1);
+        Configuracao.definir(estagios, "threadsSerializacao", "platform");
+        Configuracao.definir(estagios, "concorrenciaEnvio", 1);
+        Configuracao.definir(estagios, "threadsEnvio", "virtual");
+        Configuracao.definir(estagios, "tempoLimite", Duration.ofSeconds(10));
+        Configuracao.iniciar(estagios, "init");
+
+        RegistroReaderFactory readerFactory = Configuracao.definir(new RegistroReaderFactory(), "tokenizer", tokenizador);
+        csvFileProcessor = Configuracao.definir(new CsvFileProcessor(readerFactory, estagios), "batchSize", TAMANHO_LOTE);
+
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(meterRegistry, null);
+        Configuracao.definir(sizer, "tamanhoInicial", TAMANHO_LOTE);
+        Configuracao.definir(sizer, "habilitado", false);
+        Configuracao.definir(sizer, "minimo", 1);
+        Configuracao.definir(sizer, "maximo", TAMANHO_LOTE);
+        Configuracao.definir(sizer, "formato", "json");
+        Configuracao.iniciar(sizer, "init");
+
+        CsvParallelReader parallelReader = new CsvParallelReader(readerFactory, meterRegistry, estagios);
+        Configuracao.definir(parallelReader, "workers", 4);
+        // faixas pequenas para que o arquivo sintético seja dividido entre os workers
+        Configuracao.definir(parallelReader, "chunkSize", new MemorySize(BigInteger.valueOf(1 << 20)));
+        Configuracao.definir(parallelReader, "readahead", new MemorySize(BigInteger.valueOf(4 << 20)));
+
+        backPressure = new CsvFileProcessorBackPressure(parallelReader, readerFactory, sizer, meterRegistry, estagios);
+        backPressureParalelo = Configuracao.definir(new CsvFileProcessorBackPressure(parallelReader, readerFactory, sizer, meterRegistry, estagios),
+            "leituraParalela", true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        estagios.parse().close();
+        estagios.descompressao().close();
+        estagios.serializacao().close();
+        estagios.envio().close();
+    }
+
+    @Benchmark
+    public long csvFileProcessor() {
+        return contar(csvFileProcessor.processFile(arquivo).collect().asList().await().indefinitely());
+    }
+
+    @Benchmark
+    public long backPressure() {
+        return contar(backPressure.processFile(arquivo).collect().asList().await().indefinitely());
+    }
+
+    @Benchmark
+    public long backPressureParalelo() {
+        return backPressureParalelo.lerArquivo(arquivo, null)
+            .collect().last()
+            .map(LoteArquivo::registroFinal)
+            .await().indefinitely();
+    }
+
+    private static long contar(List<List<Registro>> lotes) {
+        long total = 0;
+        for (List<Registro> lote : lotes) {
+            total += lote.size();
+        }
+        return total;
+    }
+}
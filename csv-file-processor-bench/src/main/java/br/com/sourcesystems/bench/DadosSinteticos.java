@@ -0,0 +1,87 @@
+package br.com.sourcesystems.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Gera os mesmos dados a cada execução (semente fixa), para que resultados de execuções
+ * diferentes sejam comparáveis. {@code largura} é o número de caracteres do nome e da parte
+ * local do e-mail; telefone e CPF têm tamanho fixo, como nos arquivos reais.
+ */
+final class DadosSinteticos {
+
+    static final long SEMENTE = 20240917L;
+
+    static final String CABECALHO = "nome;email;telefone;cpf";
+
+    /** Data fixa: os benchmarks não devem medir {@code LocalDateTime.now()}. */
+    static final LocalDateTime DATA_LEITURA = LocalDateTime.of(2024, 9, 17, 12, 0);
+
+    private static final char[] LETRAS = "abcdefghijklmnopqrstuvwxyz".toCharArray();
+
+    private DadosSinteticos() {
+    }
+
+    static Path gerarCsv(int registros, int largura) throws IOException {
+        Path arquivo = Files.createTempFile("bench-" + registros + "-" + largura + "-", ".csv");
+        arquivo.toFile().deleteOnExit();
+        SplittableRandom random = new SplittableRandom(SEMENTE);
+        try (BufferedWriter writer = Files.newBufferedWriter(arquivo, StandardCharsets.UTF_8)) {
+            writer.write(CABECALHO);
+            writer.newLine();
+            for (int i = 0; i < registros; i++) {
+                String[] campos = campos(random, largura);
+                writer.write(String.join(";", campos));
+                writer.newLine();
+            }
+        }
+        return arquivo;
+    }
+
+    static List<br.com.sourcesystems.processor.Registro> registros(int quantidade, int largura) {
+        SplittableRandom random = new SplittableRandom(SEMENTE);
+        List<br.com.sourcesystems.processor.Registro> registros = new ArrayList<>(quantidade);
+        for (int i = 0; i < quantidade; i++) {
+            String[] campos = campos(random, largura);
+            registros.add(new br.com.sourcesystems.processor.Registro(campos[0], campos[1], campos[2], campos[3], DATA_LEITURA));
+        }
+        return registros;
+    }
+
+    static List<br.com.sourcesystems.consumer.Registro> registrosConsumidor(int quantidade, int largura) {
+        return registros(quantidade, largura).stream()
+            .map(r -> new br.com.sourcesystems.consumer.Registro(r.nome(), r.email(), r.telefone(), r.cpf(), r.dataLeitura()))
+            .toList();
+    }
+
+    private static String[] campos(SplittableRandom random, int largura) {
+        String nome = texto(random, largura);
+        String email = texto(random, largura) + "@exemplo.com.br";
+        String telefone = "11" + digitos(random, 9);
+        String cpf = digitos(random, 11);
+        return new String[] { nome, email, telefone, cpf };
+    }
+
+    private static String texto(SplittableRandom random, int tamanho) {
+        char[] texto = new char[tamanho];
+        for (int i = 0; i < tamanho; i++) {
+            texto[i] = LETRAS[random.nextInt(LETRAS.length)];
+        }
+        return new String(texto);
+    }
+
+    private static String digitos(SplittableRandom random, int tamanho) {
+        char[] digitos = new char[tamanho];
+        for (int i = 0; i < tamanho; i++) {
+            digitos[i] = (char) ('0' + random.nextInt(10));
+        }
+        return new String(digitos);
+    }
+}
@@ -0,0 +1,120 @@
+package br.com.sourcesystems.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.sourcesystems.processor.Registro;
+import br.com.sourcesystems.processor.RegistroBatch;
+
+/**
+ * Um milhão de linhas já separadas em campos montadas como {@code List<Registro>} (uma String
+ * por campo, como o tokenizador fazia) e como {@link RegistroBatch}. Com {@code -prof gc},
+ * {@code gc.alloc.rate.norm} dá os bytes alocados por milhão de linhas; o setup imprime o heap
+ * retido por cada representação depois de um GC completo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class RegistroBatchBenchmark {
+
+    private static final int LINHAS = 1_000_000;
+
+    @Param({ "8", "32" })
+    public int largura;
+
+    /** Linhas no formato do CSV, sem o separador, e o fim de cada campo dentro da linha. */
+    private char[][] linhas;
+
+    private int[][] fins;
+
+    /** Mantém a representação medida alcançável durante a leitura do heap. */
+    private List<Registro> retido;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<Registro> registros = DadosSinteticos.registros(LINHAS, largura);
+        linhas = new char[LINHAS][];
+        fins = new int[LINHAS][];
+        for (int i = 0; i < LINHAS; i++) {
+            Registro r = registros.get(i);
+            String[] campos = { r.nome(), r.email(), r.telefone(), r.cpf() };
+            StringBuilder linha = new StringBuilder();
+            fins[i] = new int[RegistroBatch.CAMPOS];
+            for (int campo = 0; campo < RegistroBatch.CAMPOS; campo++) {
+                linha.append(campos[campo]);
+                fins[i][campo] = linha.length();
+            }
+            linhas[i] = linha.toString().toCharArray();
+        }
+        registros = null;
+
+        long antes = heapUsado();
+        retido = lista();
+        long comLista = heapUsado() - antes;
+        retido = null;
+
+        antes = heapUsado();
+        retido = colunas();
+        long comLote = heapUsado() - antes;
+        retido = null;
+        System.out.printf("%nlargura %d: List<Registro> %.1f MB, RegistroBatch %.1f MB por milhão de linhas (%.1fx)%n",
+            largura, comLista / 1e6, comLote / 1e6, (double) comLista / Math.max(1, comLote));
+    }
+
+    @Benchmark
+    public List<Registro> lista() {
+        List<Registro> lote = new ArrayList<>(LINHAS);
+        for (int i = 0; i < LINHAS; i++) {
+            char[] linha = linhas[i];
+            int[] fim = fins[i];
+            lote.add(new Registro(new String(linha, 0, fim[0]), new String(linha, fim[0], fim[1] - fim[0]),
+                new String(linha, fim[1], fim[2] - fim[1]), new String(linha, fim[2], fim[3] - fim[2]),
+                LocalDateTime.now()));
+        }
+        return lote;
+    }
+
+    @Benchmark
+    public RegistroBatch colunas() {
+        RegistroBatch.Builder lote = RegistroBatch.builder(LINHAS);
+        for (int i = 0; i < LINHAS; i++) {
+            char[] linha = linhas[i];
+            int[] fim = fins[i];
+            lote.novaLinha();
+            int inicio = 0;
+            for (int campo = 0; campo < RegistroBatch.CAMPOS; campo++) {
+                lote.campo(campo, linha, inicio, fim[campo]);
+                inicio = fim[campo];
+            }
+        }
+        return lote.construir();
+    }
+
+    private static long heapUsado() {
+        MemoryMXBean memoria = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memoria.getHeapMemoryUsage().getUsed();
+    }
+}
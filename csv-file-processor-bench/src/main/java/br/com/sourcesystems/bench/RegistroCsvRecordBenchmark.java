@@ -0,0 +1,75 @@
+package br.com.sourcesystems.bench;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import br.com.sourcesystems.processor.Registro;
+
+/**
+ * Construção de {@link Registro} a partir de um {@link CSVRecord} já lido, isolada do parse:
+ * busca das colunas pelo nome do cabeçalho e {@code LocalDateTime.now()} por registro.
+ * O resultado é por registro.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class RegistroCsvRecordBenchmark {
+
+    private static final int REGISTROS = 10_000;
+
+    private static final CSVFormat FORMATO = CSVFormat.Builder.create()
+        .setHeader()
+        .setSkipHeaderRecord(true)
+        .setIgnoreHeaderCase(true)
+        .setTrim(true)
+        .setDelimiter(';')
+        .get();
+
+    @Param({ "8", "32", "128" })
+    public int largura;
+
+    private List<CSVRecord> records;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Path arquivo = DadosSinteticos.gerarCsv(REGISTROS, largura);
+        try (Reader reader = Files.newBufferedReader(arquivo, StandardCharsets.UTF_8);
+                CSVParser parser = CSVParser.parse(reader, FORMATO)) {
+            records = parser.getRecords();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REGISTROS)
+    public void construir(Blackhole bh) {
+        for (CSVRecord record : records) {
+            bh.consume(new Registro(record));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package br.com.sourcesystems.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mongodb.MongoClientSettings;
+
+import br.com.sourcesystems.consumer.Registro;
+import br.com.sourcesystems.consumer.RegistroCodec;
+
+/**
+ * Conversão de um sub-lote de {@link Registro} no BSON enviado pelo {@code insertMany}:
+ * o mapeamento para {@code Document} que o {@code KafkaConsumer} fazia antes, seguido do
+ * {@link DocumentCodec} do driver, contra o {@link RegistroCodec} gravando direto no writer.
+ * O resultado é por sub-lote.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class RegistroMongoMappingBenchmark {
+
+    private static final EncoderContext COLECAO = EncoderContext.builder().isEncodingCollectibleDocument(true).build();
+
+    @Param({ "100", "1000" })
+    public int tamanhoLote;
+
+    private List<Registro> lote;
+
+    private DocumentCodec documentCodec;
+
+    private RegistroCodec registroCodec;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        lote = DadosSinteticos.registrosConsumidor(tamanhoLote, 32);
+        documentCodec = new DocumentCodec(MongoClientSettings.getDefaultCodecRegistry());
+        registroCodec = new RegistroCodec();
+    }
+
+    @Benchmark
+    public int documento() {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        for (Registro r : lote) {
+            Document documento = new Document()
+                .append("nome", r.nome())
+                .append("email", r.email())
+                .append("telefone", r.telefone())
+                .append("cpf", r.cpf())
+                .append("dataLeitura", r.dataLeitura());
+            documentCodec.encode(new BsonBinaryWriter(buffer), documento, COLECAO);
+        }
+        return buffer.getSize();
+    }
+
+    @Benchmark
+    public int registroCodec() {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        for (Registro r : lote) {
+            registroCodec.encode(new BsonBinaryWriter(buffer), r, COLECAO);
+        }
+        return buffer.getSize();
+    }
+}
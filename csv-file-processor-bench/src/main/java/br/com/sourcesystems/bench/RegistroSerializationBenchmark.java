@@ -0,0 +1,78 @@
+package br.com.sourcesystems.bench;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.sourcesystems.deserializer.RegistroDeserializer;
+import br.com.sourcesystems.processor.Registro;
+import br.com.sourcesystems.serializer.RegistroSerializer;
+
+/**
+ * Lote de registros pelo {@link RegistroSerializer} do publicador e de volta pelo
+ * {@link RegistroDeserializer} do consumidor, nos dois formatos de payload. O resultado é por
+ * lote; o tamanho do payload aparece no log do setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class RegistroSerializationBenchmark {
+
+    private static final String TOPICO = "registros-csv";
+
+    @Param({ "100", "1000", "5000" })
+    public int tamanhoLote;
+
+    @Param({ "json", "binary" })
+    public String formato;
+
+    private List<Registro> lote;
+
+    private RegistroSerializer serializer;
+
+    private RegistroDeserializer deserializer;
+
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        lote = DadosSinteticos.registros(tamanhoLote, 32);
+        serializer = new RegistroSerializer();
+        serializer.configure(Map.of(RegistroSerializer.FORMATO_CONFIG, formato), false);
+        deserializer = new RegistroDeserializer();
+        payload = serializer.serialize(TOPICO, lote);
+        System.out.printf("%n%s, %d registros: %d bytes por lote (%.1f por registro)%n",
+            formato, tamanhoLote, payload.length, (double) payload.length / tamanhoLote);
+    }
+
+    @Benchmark
+    public byte[] serializar() {
+        return serializer.serialize(TOPICO, lote);
+    }
+
+    @Benchmark
+    public List<br.com.sourcesystems.consumer.Registro> desserializar() {
+        return deserializer.deserialize(TOPICO, payload);
+    }
+
+    @Benchmark
+    public List<br.com.sourcesystems.consumer.Registro> idaEVolta() {
+        return deserializer.deserialize(TOPICO, serializer.serialize(TOPICO, lote));
+    }
+}
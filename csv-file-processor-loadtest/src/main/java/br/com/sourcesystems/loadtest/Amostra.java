@@ -0,0 +1,52 @@
+package br.com.sourcesystems.loadtest;
+
+/**
+ * Estado dos serviços em um instante da carga. {@code gravados} é o total de documentos em
+ * {@code registros}; tempos de CPU são acumulados desde o início de cada processo.
+ */
+record Amostra(
+    long instanteMs,
+    long gravados,
+    double heapPub,
+    double heapSub,
+    double loteEnvio,
+    double lagKafka,
+    double bufferSub,
+    double pipelineSub,
+    double escritaEmUso,
+    double escritaLimite,
+    double filaErros,
+    double cpuPubSegundos,
+    double cpuSubSegundos
+) {
+
+    static final String CABECALHO_CSV = "instante_ms,gravados,heap_pub,heap_sub,lote_envio,lag_kafka,buffer_sub,"
+        + "pipeline_sub,escrita_em_uso,escrita_limite,fila_erros,cpu_pub_s,cpu_sub_s";
+
+    static Amostra coletar(long instanteMs, long gravados, PrometheusMetrics pub, PrometheusMetrics sub,
+            double cpuPub, double cpuSub) {
+        return new Amostra(
+            instanteMs,
+            gravados,
+            pub.soma("jvm_memory_used_bytes", "area=\"heap\""),
+            sub.soma("jvm_memory_used_bytes", "area=\"heap\""),
+            pub.soma("ingestor_batch_size"),
+            sub.soma("kafka_consumer_fetch_manager_records_lag"),
+            sub.soma("consumer_buffer_pendentes") + sub.soma("consumer_buffer_em_gravacao"),
+            sub.soma("consumer_pipeline_pendentes"),
+            sub.soma("consumer_write_concurrency_in_flight"),
+            sub.soma("consumer_write_concurrency_limit"),
+            sub.soma("consumer_dead_letter_fila"),
+            cpuPub,
+            cpuSub);
+    }
+
+    String csv() {
+        return String.join(",",
+            Long.toString(instanteMs), Long.toString(gravados),
+            Double.toString(heapPub), Double.toString(heapSub), Double.toString(loteEnvio), Double.toString(lagKafka),
+            Double.toString(bufferSub), Double.toString(pipelineSub), Double.toString(escritaEmUso),
+            Double.toString(escritaLimite), Double.toString(filaErros),
+            Double.toString(cpuPubSegundos), Double.toString(cpuSubSegundos));
+    }
+}
@@ -0,0 +1,88 @@
+package br.com.sourcesystems.loadtest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.bson.Document;
+
+import com.mongodb.client.MongoCollection;
+
+/**
+ * Latência ponta a ponta por registro: da entrega do arquivo em {@code app.files.dir} até o
+ * documento existir em {@code registros}.
+ *
+ * O instante de gravação vem do {@code _id}: o {@code RegistroCodec} gera o ObjectId logo antes
+ * do {@code insertMany}, e o ObjectId guarda segundos. Cada documento é contado no meio do seu
+ * segundo, então a resolução é de 1 s, suficiente para cargas que duram minutos. Os documentos
+ * são agregados no próprio MongoDB por arquivo (prefixo {@code fNNNN} do nome) e segundo.
+ */
+final class LatencyHistogram {
+
+    static final long[] LIMITES_MS = { 1_000, 2_000, 5_000, 10_000, 20_000, 30_000, 60_000, 120_000, 300_000, 600_000 };
+
+    private final TreeMap<Long, Long> contagens = new TreeMap<>();
+
+    private long total;
+
+    static LatencyHistogram medir(MongoCollection<Document> registros, Map<Integer, Long> entregas) {
+        LatencyHistogram histograma = new LatencyHistogram();
+        List<Document> pipeline = List.of(
+            new Document("$group", new Document("_id", new Document()
+                    .append("arquivo", new Document("$toInt", new Document("$substrCP", List.of("$nome", 1, 4))))
+                    .append("segundo", new Document("$toLong", new Document("$toDate", "$_id"))))
+                .append("n", new Document("$sum", 1))));
+        for (Document grupo : registros.aggregate(pipeline).allowDiskUse(true)) {
+            Document chave = grupo.get("_id", Document.class);
+            Long entrega = entregas.get(chave.getInteger("arquivo"));
+            if (entrega == null) {
+                continue;
+            }
+            long latencia = Math.max(0, chave.getLong("segundo") + 500 - entrega);
+            histograma.registrar(latencia, ((Number) grupo.get("n")).longValue());
+        }
+        return histograma;
+    }
+
+    void registrar(long latenciaMs, long quantidade) {
+        contagens.merge(latenciaMs, quantidade, Long::sum);
+        total += quantidade;
+    }
+
+    long total() {
+        return total;
+    }
+
+    /** Latência abaixo da qual está a fração {@code p} dos registros. */
+    long percentil(double p) {
+        if (total == 0) {
+            return 0;
+        }
+        long alvo = (long) Math.ceil(p * total);
+        long acumulado = 0;
+        for (Map.Entry<Long, Long> entrada : contagens.entrySet()) {
+            acumulado += entrada.getValue();
+            if (acumulado >= alvo) {
+                return entrada.getKey();
+            }
+        }
+        return contagens.lastKey();
+    }
+
+    long maximo() {
+        return total == 0 ? 0 : contagens.lastKey();
+    }
+
+    /** Quantidade de registros em cada faixa de {@link #LIMITES_MS}, mais a faixa acima do último. */
+    long[] faixas() {
+        long[] faixas = new long[LIMITES_MS.length + 1];
+        for (Map.Entry<Long, Long> entrada : contagens.entrySet()) {
+            int faixa = 0;
+            while (faixa < LIMITES_MS.length && entrada.getKey() > LIMITES_MS[faixa]) {
+                faixa++;
+            }
+            faixas[faixa] += entrada.getValue();
+        }
+        return faixas;
+    }
+}
@@ -0,0 +1,161 @@
+package br.com.sourcesystems.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+
+/**
+ * Carga ponta a ponta: gera os CSVs, sobe Kafka e MongoDB locais ({@link StandIns}), inicia o
+ * pub e o sub a partir dos jars empacotados, entrega os arquivos em {@code app.files.dir} e
+ * acompanha a gravação em {@code registros} até o total esperado, o tempo limite ou um período
+ * sem progresso. Ao final grava {@code relatorio.md} e {@code amostras.csv} no diretório da
+ * execução.
+ */
+public final class LoadHarness {
+
+    private static final Duration INTERVALO_AMOSTRAGEM = Duration.ofSeconds(1);
+
+    private static final Duration TEMPO_INICIALIZACAO = Duration.ofMinutes(2);
+
+    private LoadHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Parametros parametros = Parametros.de(args);
+        Path execucao = parametros.diretorio()
+            .resolve("execucao-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")))
+            .toAbsolutePath();
+        Path preparacao = Files.createDirectories(execucao.resolve("preparacao"));
+        Path entrada = Files.createDirectories(execucao.resolve("entrada"));
+        Path dados = Files.createDirectories(execucao.resolve("dados"));
+
+        System.out.printf("Gerando %d registros em %d arquivos em %s%n", parametros.registros(), parametros.arquivos(), preparacao);
+        SyntheticCsvGenerator gerador = new SyntheticCsvGenerator(parametros.largura(), parametros.skew(), parametros.chaves());
+        List<Path> arquivos = new ArrayList<>();
+        for (int i = 0; i < parametros.arquivos(); i++) {
+            arquivos.add(gerador.gerar(preparacao, i, parametros.registrosDoArquivo(i)));
+        }
+
+        System.out.println("Iniciando Kafka e MongoDB locais");
+        try (StandIns standIns = StandIns.iniciar(parametros.particoes())) {
+            Map<String, String> sub = new LinkedHashMap<>();
+            sub.put("kafka.bootstrap.servers", standIns.kafkaBootstrapServers());
+            sub.put("quarkus.mongodb.connection-string", standIns.mongoConnectionString());
+            sub.put("mp.messaging.connector.smallrye-kafka.topic.registros-csv.partitions", Integer.toString(parametros.particoes()));
+            sub.put("consumer.dead-letter.spill-file", dados.resolve("registros_falhos.ndjson").toString());
+            sub.put("quarkus.otel.sdk.disabled", "true");
+            sub.putAll(parametros.extrasSub());
+
+            Map<String, String> pub = new LinkedHashMap<>();
+            pub.put("kafka.bootstrap.servers", standIns.kafkaBootstrapServers());
+            pub.put("mp.messaging.connector.smallrye-kafka.topic.registros-csv.partitions", Integer.toString(parametros.particoes()));
+            pub.put("ingestor.routing.partitions", Integer.toString(parametros.particoes()));
+            pub.put("app.files.dir", entrada.toString());
+            pub.put("app.files.processed.dir", dados.resolve("processado").toString());
+            pub.put("app.files.checkpoint.dir", dados.resolve("checkpoint").toString());
+            pub.put("ingestor.discovery.completion", "rename");
+            pub.put("quarkus.otel.sdk.disabled", "true");
+            pub.putAll(parametros.extrasPub());
+
+            try (ServiceProcess subProcess = ServiceProcess.iniciar("sub", parametros.subJar(), parametros.portaSub(),
+                        parametros.heap(), sub, execucao.resolve("sub.log"));
+                    ServiceProcess pubProcess = ServiceProcess.iniciar("pub", parametros.pubJar(), parametros.portaPub(),
+                        parametros.heap(), pub, execucao.resolve("pub.log"));
+                    MongoClient mongo = MongoClients.create(standIns.mongoConnectionString())) {
+                subProcess.aguardarPronto(TEMPO_INICIALIZACAO);
+                pubProcess.aguardarPronto(TEMPO_INICIALIZACAO);
+                MongoCollection<Document> registros = mongo.getDatabase("arquivos").getCollection("registros");
+
+                List<Amostra> amostras = new ArrayList<>();
+                amostras.add(amostra(0, pubProcess, subProcess));
+                double cpuHarnessInicial = cpuHarness();
+
+                Map<Integer, Long> entregas = new LinkedHashMap<>();
+                for (int i = 0; i < arquivos.size(); i++) {
+                    Path arquivo = arquivos.get(i);
+                    String nome = arquivo.getFileName().toString().replace(".tmp", "");
+                    Files.move(arquivo, entrada.resolve(nome), StandardCopyOption.ATOMIC_MOVE);
+                    entregas.put(i, System.currentTimeMillis());
+                }
+                long inicio = entregas.values().iterator().next();
+                System.out.printf("%d arquivos entregues em %s%n", arquivos.size(), entrada);
+
+                acompanhar(parametros, registros, pubProcess, subProcess, amostras, inicio);
+
+                System.out.println("Calculando latências");
+                LatencyHistogram latencia = LatencyHistogram.medir(registros, entregas);
+                PrometheusMetrics pubFinal = orVazio(pubProcess.coletar());
+                PrometheusMetrics subFinal = orVazio(subProcess.coletar());
+                LoadReport relatorio = new LoadReport(parametros, amostras, inicio, parametros.registros(), latencia,
+                    pubFinal, subFinal, cpuHarness() - cpuHarnessInicial);
+                relatorio.gravar(execucao);
+                System.out.println(relatorio.texto());
+                System.out.println("Relatório gravado em " + execucao.resolve("relatorio.md"));
+            }
+        }
+    }
+
+    private static void acompanhar(Parametros parametros, MongoCollection<Document> registros, ServiceProcess pub,
+            ServiceProcess sub, List<Amostra> amostras, long inicio) throws InterruptedException {
+        long ultimoProgresso = inicio;
+        long gravadosAntes = 0;
+        while (true) {
+            Thread.sleep(INTERVALO_AMOSTRAGEM.toMillis());
+            long gravados = registros.estimatedDocumentCount();
+            long agora = System.currentTimeMillis();
+            Amostra amostra = amostra(gravados, pub, sub);
+            amostras.add(amostra);
+            System.out.printf("%6.0f s  %d/%d registros  lag %.0f  escrita %.0f/%.0f%n",
+                (agora - inicio) / 1000.0, gravados, parametros.registros(),
+                amostra.lagKafka(), amostra.escritaEmUso(), amostra.escritaLimite());
+
+            if (gravados > gravadosAntes) {
+                gravadosAntes = gravados;
+                ultimoProgresso = agora;
+            }
+            if (gravados >= parametros.registros()) {
+                return;
+            }
+            if (agora - inicio > parametros.limite().toMillis()) {
+                System.out.println("Tempo limite atingido");
+                return;
+            }
+            if (agora - ultimoProgresso > parametros.semProgresso().toMillis()) {
+                System.out.println("Sem progresso há " + parametros.semProgresso().toSeconds() + " s; encerrando");
+                return;
+            }
+        }
+    }
+
+    private static Amostra amostra(long gravados, ServiceProcess pub, ServiceProcess sub) {
+        return Amostra.coletar(System.currentTimeMillis(), gravados,
+            orVazio(pub.coletar()), orVazio(sub.coletar()),
+            pub.tempoCpu().toNanos() / 1e9, sub.tempoCpu().toNanos() / 1e9);
+    }
+
+    private static PrometheusMetrics orVazio(PrometheusMetrics metricas) {
+        return metricas == null ? PrometheusMetrics.VAZIO : metricas;
+    }
+
+    /** CPU da JVM do harness, que inclui o broker Kafka embutido. */
+    private static double cpuHarness() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getProcessCpuTime() / 1e9;
+        }
+        return 0;
+    }
+}
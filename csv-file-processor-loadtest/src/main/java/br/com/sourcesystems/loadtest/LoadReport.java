@@ -0,0 +1,201 @@
+package br.com.sourcesystems.loadtest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Relatório em Markdown de uma execução: vazão, latência ponta a ponta, memória, GC e CPU de
+ * cada serviço, e a etapa que limitou a vazão. As amostras vão junto em {@code amostras.csv}.
+ */
+final class LoadReport {
+
+    /** Fração de uso a partir da qual uma etapa é considerada saturada. */
+    private static final double SATURACAO = 0.8;
+
+    /** Mensagens de atraso do consumidor consideradas irrelevantes. */
+    private static final double LAG_TOLERADO = 20;
+
+    private final Parametros parametros;
+    private final List<Amostra> amostras;
+    private final long inicioMs;
+    private final long esperados;
+    private final LatencyHistogram latencia;
+    private final PrometheusMetrics pubFinal;
+    private final PrometheusMetrics subFinal;
+    private final double cpuHarnessSegundos;
+
+    LoadReport(Parametros parametros, List<Amostra> amostras, long inicioMs, long esperados, LatencyHistogram latencia,
+            PrometheusMetrics pubFinal, PrometheusMetrics subFinal, double cpuHarnessSegundos) {
+        this.parametros = parametros;
+        this.amostras = amostras;
+        this.inicioMs = inicioMs;
+        this.esperados = esperados;
+        this.latencia = latencia;
+        this.pubFinal = pubFinal;
+        this.subFinal = subFinal;
+        this.cpuHarnessSegundos = cpuHarnessSegundos;
+    }
+
+    void gravar(Path diretorio) throws IOException {
+        List<String> linhas = new ArrayList<>();
+        linhas.add(Amostra.CABECALHO_CSV);
+        amostras.forEach(amostra -> linhas.add(amostra.csv()));
+        Files.write(diretorio.resolve("amostras.csv"), linhas, StandardCharsets.UTF_8);
+        Files.writeString(diretorio.resolve("relatorio.md"), texto(), StandardCharsets.UTF_8);
+    }
+
+    String texto() {
+        Amostra ultima = amostras.get(amostras.size() - 1);
+        long fimMs = fimDaCarga();
+        double segundos = Math.max(0.001, (fimMs - inicioMs) / 1000.0);
+        StringBuilder r = new StringBuilder();
+
+        r.append("# Relatório de carga\n\n");
+        r.append("## Configuração\n\n");
+        r.append("| Parâmetro | Valor |\n| --- | --- |\n");
+        linha(r, "Registros", parametros.registros());
+        linha(r, "Arquivos", parametros.arquivos());
+        linha(r, "Largura dos campos", parametros.largura());
+        linha(r, "Skew do CPF (Zipf)", parametros.skew() > 0 ? parametros.skew() + " sobre " + parametros.chaves() + " chaves" : "uniforme");
+        linha(r, "Partições", parametros.particoes());
+        linha(r, "Heap por serviço", parametros.heap());
+        linha(r, "Núcleos", Runtime.getRuntime().availableProcessors());
+        linha(r, "Ajustes do pub", parametros.extrasPub().isEmpty() ? "-" : parametros.extrasPub().toString());
+        linha(r, "Ajustes do sub", parametros.extrasSub().isEmpty() ? "-" : parametros.extrasSub().toString());
+
+        r.append("\n## Vazão\n\n");
+        r.append("| Métrica | Valor |\n| --- | --- |\n");
+        linha(r, "Registros gravados", ultima.gravados() + " de " + esperados
+            + (ultima.gravados() < esperados ? " (incompleto)" : ""));
+        linha(r, "Duração (entrega do primeiro arquivo até o último registro)", formatar("%.1f s", segundos));
+        linha(r, "Vazão média", formatar("%.0f registros/s", ultima.gravados() / segundos));
+        linha(r, "Pico (intervalo de amostragem)", formatar("%.0f registros/s", pico()));
+
+        r.append("\n## Latência ponta a ponta\n\n");
+        r.append("Da entrega do arquivo em `app.files.dir` até o documento em `registros` (resolução de 1 s).\n\n");
+        r.append("| Percentil | Latência |\n| --- | --- |\n");
+        linha(r, "p50", segundos(latencia.percentil(0.50)));
+        linha(r, "p90", segundos(latencia.percentil(0.90)));
+        linha(r, "p99", segundos(latencia.percentil(0.99)));
+        linha(r, "máximo", segundos(latencia.maximo()));
+        r.append("\n| Faixa | Registros |\n| --- | --- |\n");
+        long[] faixas = latencia.faixas();
+        long anterior = 0;
+        for (int i = 0; i < faixas.length; i++) {
+            String faixa = i < LatencyHistogram.LIMITES_MS.length
+                ? segundos(anterior) + " – " + segundos(LatencyHistogram.LIMITES_MS[i])
+                : "> " + segundos(anterior);
+            linha(r, faixa, faixas[i]);
+            if (i < LatencyHistogram.LIMITES_MS.length) {
+                anterior = LatencyHistogram.LIMITES_MS[i];
+            }
+        }
+
+        r.append("\n## Memória, GC e CPU\n\n");
+        r.append("| Serviço | Heap máximo usado | Pausas de GC | Tempo em GC | Maior pausa | CPU | Núcleos médios |\n");
+        r.append("| --- | --- | --- | --- | --- | --- | --- |\n");
+        double cpuPub = ultima.cpuPubSegundos() - amostras.get(0).cpuPubSegundos();
+        double cpuSub = ultima.cpuSubSegundos() - amostras.get(0).cpuSubSegundos();
+        servico(r, "pub", amostras.stream().mapToDouble(Amostra::heapPub).max().orElse(0), pubFinal, cpuPub, segundos);
+        servico(r, "sub", amostras.stream().mapToDouble(Amostra::heapSub).max().orElse(0), subFinal, cpuSub, segundos);
+        r.append(formatar("| harness (Kafka embutido) | - | - | - | - | %.1f s | %.2f |%n", cpuHarnessSegundos, cpuHarnessSegundos / segundos));
+
+        r.append("\n## Gargalo\n\n");
+        diagnostico(r, cpuPub / segundos, cpuSub / segundos);
+        return r.toString();
+    }
+
+    /**
+     * Compara o atraso do consumidor com a ocupação de cada etapa do sub: com o consumidor em
+     * dia, o limite está no publicador; atrasado, na etapa do sub mais ocupada.
+     */
+    private void diagnostico(StringBuilder r, double nucleosPub, double nucleosSub) {
+        List<Amostra> ativas = amostras.stream().filter(a -> a.instanteMs() >= inicioMs && a.instanteMs() <= fimDaCarga()).toList();
+        if (ativas.isEmpty()) {
+            ativas = amostras;
+        }
+        double lag = ativas.stream().mapToDouble(Amostra::lagKafka).average().orElse(0);
+        double escrita = ativas.stream()
+            .mapToDouble(a -> a.escritaLimite() > 0 ? a.escritaEmUso() / a.escritaLimite() : 0)
+            .average().orElse(0);
+        double buffer = ativas.stream().mapToDouble(Amostra::bufferSub).average().orElse(0) / parametros.bufferMaxPendentes();
+        double erros = ativas.stream().mapToDouble(Amostra::filaErros).max().orElse(0);
+        int nucleos = Runtime.getRuntime().availableProcessors();
+
+        String etapa;
+        if (lag <= LAG_TOLERADO) {
+            etapa = nucleosPub >= SATURACAO * nucleos
+                ? "CPU do pub (leitura, parse e serialização)"
+                : "leitura e envio no pub: o consumidor acompanhou; avaliar lotes em voo, tamanho de lote e I/O de disco";
+        } else if (escrita >= SATURACAO || buffer >= SATURACAO) {
+            etapa = "gravação no MongoDB (sub): concorrência de escrita ou buffer no limite enquanto o consumo atrasa";
+        } else if (nucleosSub >= SATURACAO * nucleos) {
+            etapa = "CPU do sub (desserialização e montagem dos lotes)";
+        } else {
+            etapa = "consumo do Kafka no sub: atraso sem escrita saturada; avaliar max.poll.records e fila por partição";
+        }
+
+        r.append("**Etapa limitante:** ").append(etapa).append("\n\n");
+        r.append("| Indicador (média da carga) | Valor |\n| --- | --- |\n");
+        linha(r, "Atraso do consumidor (mensagens)", formatar("%.0f", lag));
+        linha(r, "Ocupação da concorrência de escrita", formatar("%.0f%%", escrita * 100));
+        linha(r, "Ocupação do buffer de escrita", formatar("%.0f%%", buffer * 100));
+        linha(r, "Lotes aguardando nas filas por partição", formatar("%.1f",
+            ativas.stream().mapToDouble(Amostra::pipelineSub).average().orElse(0)));
+        linha(r, "Tamanho de lote do pub", formatar("%.0f", ativas.stream().mapToDouble(Amostra::loteEnvio).average().orElse(0)));
+        linha(r, "Maior fila de registros com erro", formatar("%.0f", erros));
+        linha(r, "Núcleos usados pelo pub / sub", formatar("%.2f / %.2f de %d", nucleosPub, nucleosSub, nucleos));
+    }
+
+    private void servico(StringBuilder r, String nome, double heap, PrometheusMetrics metricas, double cpu, double segundos) {
+        r.append(formatar("| %s | %.0f MB | %.0f | %.2f s | %.0f ms | %.1f s | %.2f |%n",
+            nome,
+            heap / (1024 * 1024),
+            metricas.soma("jvm_gc_pause_seconds_count"),
+            metricas.soma("jvm_gc_pause_seconds_sum"),
+            metricas.maximo("jvm_gc_pause_seconds_max") * 1000,
+            cpu,
+            cpu / segundos));
+    }
+
+    /** Instante da primeira amostra que atingiu o total gravado, ou da última. */
+    private long fimDaCarga() {
+        long total = amostras.get(amostras.size() - 1).gravados();
+        for (Amostra amostra : amostras) {
+            if (amostra.gravados() >= total) {
+                return amostra.instanteMs();
+            }
+        }
+        return amostras.get(amostras.size() - 1).instanteMs();
+    }
+
+    private double pico() {
+        double pico = 0;
+        for (int i = 1; i < amostras.size(); i++) {
+            Amostra anterior = amostras.get(i - 1);
+            Amostra atual = amostras.get(i);
+            long intervalo = atual.instanteMs() - anterior.instanteMs();
+            if (intervalo > 0) {
+                pico = Math.max(pico, (atual.gravados() - anterior.gravados()) * 1000.0 / intervalo);
+            }
+        }
+        return pico;
+    }
+
+    private static void linha(StringBuilder r, String nome, Object valor) {
+        r.append("| ").append(nome).append(" | ").append(valor).append(" |\n");
+    }
+
+    private static String segundos(long ms) {
+        return formatar("%.1f s", ms / 1000.0);
+    }
+
+    private static String formatar(String formato, Object... valores) {
+        return String.format(Locale.ROOT, formato, valores);
+    }
+}
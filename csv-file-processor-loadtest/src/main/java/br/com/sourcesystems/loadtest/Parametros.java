@@ -0,0 +1,82 @@
+package br.com.sourcesystems.loadtest;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parâmetros da carga, lidos de argumentos {@code --nome=valor}. Argumentos
+ * {@code --pub:chave=valor} e {@code --sub:chave=valor} são repassados como configuração do
+ * serviço correspondente, para comparar ajustes (tamanho de lote, concorrência) na mesma carga.
+ */
+record Parametros(
+    long registros,
+    int arquivos,
+    int largura,
+    double skew,
+    int chaves,
+    int particoes,
+    Path pubJar,
+    Path subJar,
+    Path diretorio,
+    String heap,
+    int portaPub,
+    int portaSub,
+    Duration limite,
+    Duration semProgresso,
+    long bufferMaxPendentes,
+    Map<String, String> extrasPub,
+    Map<String, String> extrasSub
+) {
+
+    static Parametros de(String[] args) {
+        Map<String, String> valores = new HashMap<>();
+        Map<String, String> extrasPub = new LinkedHashMap<>();
+        Map<String, String> extrasSub = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Argumento inválido (use --nome=valor): " + arg);
+            }
+            String chave = arg.substring(2, arg.indexOf('='));
+            String valor = arg.substring(arg.indexOf('=') + 1);
+            if (chave.startsWith("pub:")) {
+                extrasPub.put(chave.substring(4), valor);
+            } else if (chave.startsWith("sub:")) {
+                extrasSub.put(chave.substring(4), valor);
+            } else {
+                valores.put(chave, valor);
+            }
+        }
+        Parametros parametros = new Parametros(
+            Long.parseLong(valores.getOrDefault("rows", "1000000")),
+            Integer.parseInt(valores.getOrDefault("files", "4")),
+            Integer.parseInt(valores.getOrDefault("width", "32")),
+            Double.parseDouble(valores.getOrDefault("skew", "0")),
+            Integer.parseInt(valores.getOrDefault("keys", "100000")),
+            Integer.parseInt(valores.getOrDefault("partitions", "6")),
+            Paths.get(valores.getOrDefault("pub-jar", "../csv-file-processor-pub/target/quarkus-app/quarkus-run.jar")),
+            Paths.get(valores.getOrDefault("sub-jar", "../csv-file-processor-sub/target/quarkus-app/quarkus-run.jar")),
+            Paths.get(valores.getOrDefault("work-dir", "target/loadtest")),
+            valores.getOrDefault("heap", "1g"),
+            Integer.parseInt(valores.getOrDefault("pub-port", "18088")),
+            Integer.parseInt(valores.getOrDefault("sub-port", "18087")),
+            Duration.ofSeconds(Long.parseLong(valores.getOrDefault("timeout-seconds", "1800"))),
+            Duration.ofSeconds(Long.parseLong(valores.getOrDefault("stall-seconds", "60"))),
+            Long.parseLong(extrasSub.getOrDefault("consumer.buffer.max-pending", "20000")),
+            extrasPub,
+            extrasSub);
+        if (parametros.registros() < 1 || parametros.arquivos() < 1 || parametros.arquivos() > 9999) {
+            throw new IllegalArgumentException("rows deve ser positivo e files entre 1 e 9999");
+        }
+        return parametros;
+    }
+
+    /** Registros do arquivo {@code indice}; o resto da divisão vai para o primeiro. */
+    long registrosDoArquivo(int indice) {
+        long base = registros / arquivos;
+        return indice == 0 ? base + registros % arquivos : base;
+    }
+}
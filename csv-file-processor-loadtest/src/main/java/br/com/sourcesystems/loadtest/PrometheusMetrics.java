@@ -0,0 +1,93 @@
+package br.com.sourcesystems.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Leitura mínima do formato texto do Prometheus exposto em {@code /q/metrics}: nome, rótulos
+ * e valor de cada série. Os nomes seguem a conversão do Micrometer ({@code consumer.buffer.pendentes}
+ * vira {@code consumer_buffer_pendentes}).
+ */
+final class PrometheusMetrics {
+
+    static final PrometheusMetrics VAZIO = new PrometheusMetrics(List.of());
+
+    private final List<Serie> series;
+
+    private PrometheusMetrics(List<Serie> series) {
+        this.series = series;
+    }
+
+    static PrometheusMetrics parse(String texto) {
+        List<Serie> series = new ArrayList<>();
+        for (String linha : texto.split("\n")) {
+            if (linha.isBlank() || linha.startsWith("#")) {
+                continue;
+            }
+            int chave = linha.indexOf('{');
+            int espaco = linha.indexOf(' ');
+            String nome;
+            String rotulos;
+            String resto;
+            if (chave >= 0 && (espaco < 0 || chave < espaco)) {
+                int fim = linha.lastIndexOf('}');
+                nome = linha.substring(0, chave);
+                rotulos = linha.substring(chave + 1, fim);
+                resto = linha.substring(fim + 1).trim();
+            } else if (espaco > 0) {
+                nome = linha.substring(0, espaco);
+                rotulos = "";
+                resto = linha.substring(espaco + 1).trim();
+            } else {
+                continue;
+            }
+            String valor = resto.split(" ")[0];
+            series.add(new Serie(nome, rotulos, valor(valor)));
+        }
+        return new PrometheusMetrics(series);
+    }
+
+    /** Soma de todas as séries com o nome; 0 se não houver nenhuma. */
+    double soma(String nome) {
+        return soma(nome, "");
+    }
+
+    /** Soma das séries com o nome cujos rótulos contêm {@code rotulo}. */
+    double soma(String nome, String rotulo) {
+        double total = 0;
+        for (Serie serie : series) {
+            if (serie.nome().equals(nome) && serie.rotulos().contains(rotulo) && !Double.isNaN(serie.valor())) {
+                total += serie.valor();
+            }
+        }
+        return total;
+    }
+
+    /** Maior valor entre as séries com o nome; 0 se não houver nenhuma. */
+    double maximo(String nome) {
+        double maximo = 0;
+        for (Serie serie : series) {
+            if (serie.nome().equals(nome) && !Double.isNaN(serie.valor())) {
+                maximo = Math.max(maximo, serie.valor());
+            }
+        }
+        return maximo;
+    }
+
+    private static double valor(String texto) {
+        return switch (texto) {
+            case "+Inf" -> Double.POSITIVE_INFINITY;
+            case "-Inf" -> Double.NEGATIVE_INFINITY;
+            default -> {
+                try {
+                    yield Double.parseDouble(texto);
+                } catch (NumberFormatException e) {
+                    yield Double.NaN;
+                }
+            }
+        };
+    }
+
+    private record Serie(String nome, String rotulos, double valor) {
+    }
+}
@@ -0,0 +1,102 @@
+package br.com.sourcesystems.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Um dos serviços ({@code pub} ou {@code sub}) rodando em uma JVM filha a partir do
+ * {@code quarkus-run.jar}, com a configuração da carga passada como propriedades de sistema
+ * e a saída gravada em arquivo. As métricas vêm do endpoint Prometheus do próprio serviço e o
+ * tempo de CPU do sistema operacional.
+ */
+final class ServiceProcess implements AutoCloseable {
+
+    private static final Duration TEMPO_REQUISICAO = Duration.ofSeconds(5);
+
+    private final String nome;
+
+    private final Process processo;
+
+    private final URI metricas;
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(TEMPO_REQUISICAO).build();
+
+    private ServiceProcess(String nome, Process processo, int porta) {
+        this.nome = nome;
+        this.processo = processo;
+        this.metricas = URI.create("http://localhost:" + porta + "/q/metrics");
+    }
+
+    static ServiceProcess iniciar(String nome, Path jar, int porta, String heap, Map<String, String> propriedades, Path log)
+            throws IOException {
+        List<String> comando = new ArrayList<>();
+        comando.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        comando.add("-Xms" + heap);
+        comando.add("-Xmx" + heap);
+        comando.add("-Dquarkus.http.port=" + porta);
+        propriedades.forEach((chave, valor) -> comando.add("-D" + chave + "=" + valor));
+        comando.add("-jar");
+        comando.add(jar.toAbsolutePath().toString());
+        Process processo = new ProcessBuilder(comando)
+            .redirectErrorStream(true)
+            .redirectOutput(log.toFile())
+            .start();
+        return new ServiceProcess(nome, processo, porta);
+    }
+
+    /** Espera o endpoint de métricas responder, o que acontece só depois da inicialização. */
+    void aguardarPronto(Duration limite) throws InterruptedException {
+        long fim = System.nanoTime() + limite.toNanos();
+        while (System.nanoTime() < fim) {
+            if (!processo.isAlive()) {
+                throw new IllegalStateException(nome + " terminou durante a inicialização (código " + processo.exitValue() + ")");
+            }
+            if (coletar() != null) {
+                return;
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException(nome + " não respondeu em " + limite);
+    }
+
+    /** Métricas atuais, ou {@code null} se o serviço não respondeu. */
+    PrometheusMetrics coletar() {
+        try {
+            HttpResponse<String> resposta = http.send(
+                HttpRequest.newBuilder(metricas).timeout(TEMPO_REQUISICAO).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+            return resposta.statusCode() == 200 ? PrometheusMetrics.parse(resposta.body()) : null;
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    Duration tempoCpu() {
+        return processo.info().totalCpuDuration().orElse(Duration.ZERO);
+    }
+
+    String nome() {
+        return nome;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        processo.destroy();
+        if (!processo.waitFor(30, TimeUnit.SECONDS)) {
+            processo.destroyForcibly();
+        }
+    }
+}
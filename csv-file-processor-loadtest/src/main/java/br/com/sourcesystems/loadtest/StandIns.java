@@ -0,0 +1,75 @@
+package br.com.sourcesystems.loadtest;
+
+import de.flapdoodle.embed.mongo.commands.ServerAddress;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.transitions.Mongod;
+import de.flapdoodle.embed.mongo.transitions.RunningMongodProcess;
+import de.flapdoodle.reverse.TransitionWalker;
+import kafka.testkit.KafkaClusterTestKit;
+import kafka.testkit.TestKitNodes;
+
+/**
+ * Kafka e MongoDB locais para a carga: um nó KRaft (broker e controller no mesmo processo)
+ * rodando dentro da JVM do harness e um {@code mongod} embutido, ambos em portas livres de
+ * {@code localhost}. O binário do {@code mongod} vem do cache do flapdoodle
+ * ({@code ~/.embedmongo}); sem rede, ele precisa ter sido baixado antes.
+ */
+final class StandIns implements AutoCloseable {
+
+    private final KafkaClusterTestKit kafka;
+
+    private final TransitionWalker.ReachedState<RunningMongodProcess> mongod;
+
+    private StandIns(KafkaClusterTestKit kafka, TransitionWalker.ReachedState<RunningMongodProcess> mongod) {
+        this.kafka = kafka;
+        this.mongod = mongod;
+    }
+
+    static StandIns iniciar(int particoes) throws Exception {
+        TestKitNodes nodes = new TestKitNodes.Builder()
+            .setCombined(true)
+            .setNumBrokerNodes(1)
+            .setNumControllerNodes(1)
+            .build();
+        KafkaClusterTestKit kafka = new KafkaClusterTestKit.Builder(nodes)
+            .setConfigProp("num.partitions", particoes)
+            .setConfigProp("offsets.topic.replication.factor", 1)
+            .setConfigProp("transaction.state.log.replication.factor", 1)
+            .setConfigProp("transaction.state.log.min.isr", 1)
+            .setConfigProp("message.max.bytes", 10 * 1024 * 1024)
+            .build();
+        try {
+            kafka.format();
+            kafka.startup();
+            kafka.waitForReadyBrokers();
+        } catch (Exception e) {
+            kafka.close();
+            throw e;
+        }
+
+        try {
+            return new StandIns(kafka, Mongod.instance().start(Version.Main.V7_0));
+        } catch (RuntimeException e) {
+            kafka.close();
+            throw e;
+        }
+    }
+
+    String kafkaBootstrapServers() {
+        return kafka.bootstrapServers();
+    }
+
+    String mongoConnectionString() {
+        ServerAddress endereco = mongod.current().getServerAddress();
+        return "mongodb://" + endereco.getHost() + ":" + endereco.getPort();
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            mongod.close();
+        } finally {
+            kafka.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package br.com.sourcesystems.loadtest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Gera CSVs no formato lido pelo publicador ({@code nome;email;telefone;cpf}).
+ *
+ * O {@code nome} começa com {@code fNNNN-LLLLLLLLL-} (arquivo e linha), o que torna cada
+ * registro único e permite medir a latência por arquivo no MongoDB; o restante tem
+ * {@code largura} caracteres. Com {@code skew > 0} o CPF segue uma distribuição de Zipf sobre
+ * {@code chaves} valores distintos, concentrando registros em poucas chaves (e partições,
+ * já que o roteamento usa o CPF); com {@code skew = 0} é uniforme. A semente é fixa, então a
+ * mesma configuração gera os mesmos arquivos.
+ */
+final class SyntheticCsvGenerator {
+
+    static final String CABECALHO = "nome;email;telefone;cpf";
+
+    /** Tamanho do prefixo {@code fNNNN} que identifica o arquivo no campo nome. */
+    static final int PREFIXO_ARQUIVO = 5;
+
+    private static final long SEMENTE = 20240917L;
+
+    private static final char[] LETRAS = "abcdefghijklmnopqrstuvwxyz".toCharArray();
+
+    private final int largura;
+
+    private final double[] distribuicao;
+
+    SyntheticCsvGenerator(int largura, double skew, int chaves) {
+        this.largura = largura;
+        this.distribuicao = skew > 0 ? zipf(chaves, skew) : null;
+    }
+
+    /**
+     * Grava o arquivo como {@code carga-NNNN.csv.tmp}; o chamador o renomeia para
+     * {@code .csv} no momento de entregá-lo ao publicador.
+     */
+    Path gerar(Path diretorio, int arquivo, long registros) throws IOException {
+        Path destino = diretorio.resolve(String.format("carga-%04d.csv.tmp", arquivo));
+        SplittableRandom random = new SplittableRandom(SEMENTE + arquivo);
+        try (BufferedWriter writer = Files.newBufferedWriter(destino, StandardCharsets.UTF_8)) {
+            writer.write(CABECALHO);
+            writer.newLine();
+            StringBuilder linha = new StringBuilder(3 * largura + 64);
+            for (long i = 0; i < registros; i++) {
+                linha.setLength(0);
+                linha.append(String.format("f%04d-%09d-", arquivo, i));
+                texto(linha, random, largura);
+                linha.append(';');
+                texto(linha, random, largura);
+                linha.append("@exemplo.com.br;11");
+                digitos(linha, random, 9);
+                linha.append(';').append(cpf(random));
+                writer.append(linha);
+                writer.newLine();
+            }
+        }
+        return destino;
+    }
+
+    private String cpf(SplittableRandom random) {
+        if (distribuicao == null) {
+            StringBuilder cpf = new StringBuilder(11);
+            digitos(cpf, random, 11);
+            return cpf.toString();
+        }
+        int posicao = Arrays.binarySearch(distribuicao, random.nextDouble());
+        int chave = posicao >= 0 ? posicao : Math.min(-posicao - 1, distribuicao.length - 1);
+        // espalha as chaves pelo espaço de CPFs para não concentrar prefixos
+        return String.format("%011d", (chave * 7_919_113L) % 100_000_000_000L);
+    }
+
+    /** Distribuição acumulada de Zipf com expoente {@code s} sobre {@code n} chaves. */
+    private static double[] zipf(int n, double s) {
+        double[] acumulada = new double[n];
+        double soma = 0;
+        for (int i = 0; i < n; i++) {
+            soma += 1 / Math.pow(i + 1, s);
+            acumulada[i] = soma;
+        }
+        for (int i = 0; i < n; i++) {
+            acumulada[i] /= soma;
+        }
+        return acumulada;
+    }
+
+    private static void texto(StringBuilder destino, SplittableRandom random, int tamanho) {
+        for (int i = 0; i < tamanho; i++) {
+            destino.append(LETRAS[random.nextInt(LETRAS.length)]);
+        }
+    }
+
+    private static void digitos(StringBuilder destino, SplittableRandom random, int tamanho) {
+        for (int i = 0; i < tamanho; i++) {
+            destino.append((char) ('0' + random.nextInt(10)));
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package br.com.sourcesystems.processor;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.configuration.MemorySize;
+import io.smallrye.reactive.messaging.kafka.KafkaClientService;
+import io.smallrye.reactive.messaging.kafka.KafkaProducer;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Tamanho de lote (em registros) ajustado durante a ingestão.
+ *
+ * O lote cresce aos poucos até o tamanho que deixa cada mensagem perto de
+ * {@code ingestor.batch.target-bytes}, estimado pela média de bytes por registro e pela média
+ * de mensagens em que cada lote é dividido pelo roteamento por partição. A latência observada é
+ * a do lote inteiro, uma amostra por lote. Quando a latência de confirmação passa de {@code ingestor.batch.ack-latency-target}
+ * ou o buffer do produtor fica acima de {@code ingestor.batch.buffer-pressure}, o lote é
+ * reduzido pela metade, no máximo uma vez a cada latência média: a média demora a cair, e as
+ * confirmações seguintes da mesma janela lenta não reduzem de novo. O resultado fica sempre
+ * entre {@code ingestor.batch.min-size} e {@code ingestor.batch.max-size} e é exportado em
+ * {@code ingestor.batch.size}.
+ */
+@ApplicationScoped
+public class AdaptiveBatchSizer {
+
+    private static final Logger LOG = Logger.getLogger(AdaptiveBatchSizer.class);
+
+    private static final String CANAL = "registros-csv";
+
+    /** Peso da amostra mais recente nas médias móveis. */
+    private static final double PESO = 0.2;
+
+    private static final long INTERVALO_METRICAS_PRODUTOR = Duration.ofSeconds(1).toNanos();
+
+    @ConfigProperty(name = "producer.batch.size", defaultValue = "100")
+    private int tamanhoInicial;
+
+    @ConfigProperty(name = "ingestor.batch.adaptive.enabled", defaultValue = "true")
+    private boolean habilitado;
+
+    @ConfigProperty(name = "ingestor.batch.target-bytes", defaultValue = "512K")
+    private MemorySize alvoBytes;
+
+    @ConfigProperty(name = "ingestor.batch.min-size", defaultValue = "50")
+    private int minimo;
+
+    @ConfigProperty(name = "ingestor.batch.max-size", defaultValue = "5000")
+    private int maximo;
+
+    @ConfigProperty(name = "ingestor.batch.ack-latency-target", defaultValue = "250ms")
+    private Duration latenciaAlvo;
+
+    @ConfigProperty(name = "ingestor.batch.buffer-pressure", defaultValue = "0.8")
+    private double pressaoMaxima;
+
+    @ConfigProperty(name = "mp.messaging.outgoing.registros-csv.registro.format", defaultValue = "json")
+    private String formato;
+
+    private final MeterRegistry meterRegistry;
+
+    private final KafkaClientService kafkaClientService;
+
+    private final AtomicInteger tamanho = new AtomicInteger();
+
+    private int bytesFixosPorRegistro;
+
+    private double bytesPorRegistro;
+
+    private double partesPorLote;
+
+    private double latenciaMedia;
+
+    private double pressaoBuffer;
+
+    private long ultimaLeituraProdutor;
+
+    private long ultimaReducao;
+
+    public AdaptiveBatchSizer(MeterRegistry meterRegistry, KafkaClientService kafkaClientService) {
+        this.meterRegistry = meterRegistry;
+        this.kafkaClientService = kafkaClientService;
+    }
+
+    @PostConstruct
+    void init() {
+        if (minimo < 1 || maximo < minimo) {
+            throw new IllegalArgumentException("Limites de lote inválidos: min=" + minimo + ", max=" + maximo);
+        }
+        tamanho.set(habilitado ? limitar(tamanhoInicial) : tamanhoInicial);
+        // nomes das chaves e data no JSON; no binário só os prefixos de tamanho e a data
+        bytesFixosPorRegistro = "binary".equalsIgnoreCase(formato) ? 12 : 96;
+        meterRegistry.gauge("ingestor.batch.size", tamanho);
+    }
+
+    /**
+     * Quantidade de registros do próximo lote a ser lido.
+     */
+    public int tamanhoLote() {
+        return tamanho.get();
+    }
+
+    /**
+     * Registra um lote entregue ao produtor em {@code partes} mensagens, atualizando as
+     * estimativas de bytes por registro e de mensagens por lote.
+     */
+    public void loteEnviado(List<Registro> lote, int partes) {
+        if (!habilitado || lote.isEmpty()) {
+            return;
+        }
+        long bytes = 0;
+        if (lote instanceof RegistroBatch colunas) {
+            bytes = (long) bytesFixosPorRegistro * lote.size() + colunas.bytesDados();
+        } else {
+            for (Registro registro : lote) {
+                bytes += bytesFixosPorRegistro + comprimento(registro.nome()) + comprimento(registro.email())
+                    + comprimento(registro.telefone()) + comprimento(registro.cpf());
+            }
+        }
+        synchronized (this) {
+            bytesPorRegistro = media(bytesPorRegistro, (double) bytes / lote.size());
+            partesPorLote = media(partesPorLote, Math.max(1, partes));
+        }
+    }
+
+    /**
+     * Registra a confirmação de todas as mensagens de um lote pelo broker e recalcula o tamanho.
+     */
+    public void loteConfirmado(long latenciaNanos) {
+        if (!habilitado) {
+            return;
+        }
+        atualizarPressaoBuffer();
+        synchronized (this) {
+            latenciaMedia = media(latenciaMedia, latenciaNanos);
+            int atual = tamanho.get();
+            int novo;
+            if (latenciaMedia > latenciaAlvo.toNanos() || pressaoBuffer > pressaoMaxima) {
+                long agora = System.nanoTime();
+                if (agora - ultimaReducao >= latenciaMedia) {
+                    novo = atual / 2;
+                    ultimaReducao = agora;
+                } else {
+                    novo = atual;
+                }
+            } else {
+                int alvo = bytesPorRegistro > 0
+                    ? (int) Math.min(Integer.MAX_VALUE, alvoBytes.asLongValue() * Math.max(1, partesPorLote) / bytesPorRegistro)
+                    : maximo;
+                novo = alvo < atual ? alvo : Math.min(alvo, atual + Math.max(1, atual / 8));
+            }
+            novo = limitar(novo);
+            if (novo != atual) {
+                tamanho.set(novo);
+                LOG.debugf("Tamanho de lote ajustado de %d para %d (%.0f bytes/registro, latência %.1f ms, buffer %.0f%%)",
+                    atual, novo, bytesPorRegistro, latenciaMedia / 1_000_000, pressaoBuffer * 100);
+            }
+        }
+    }
+
+    private void atualizarPressaoBuffer() {
+        long agora = System.nanoTime();
+        synchronized (this) {
+            if (agora - ultimaLeituraProdutor < INTERVALO_METRICAS_PRODUTOR) {
+                return;
+            }
+            ultimaLeituraProdutor = agora;
+        }
+        try {
+            KafkaProducer<?, ?> producer = kafkaClientService.getProducer(CANAL);
+            if (producer == null) {
+                return;
+            }
+            double total = 0;
+            double disponivel = 0;
+            for (Map.Entry<MetricName, ? extends Metric> metrica : producer.unwrap().metrics().entrySet()) {
+                if (!"producer-metrics".equals(metrica.getKey().group())) {
+                    continue;
+                }
+                if ("buffer-total-bytes".equals(metrica.getKey().name())) {
+                    total = ((Number) metrica.getValue().metricValue()).doubleValue();
+                } else if ("buffer-available-bytes".equals(metrica.getKey().name())) {
+                    disponivel = ((Number) metrica.getValue().metricValue()).doubleValue();
+                }
+            }
+            if (total > 0) {
+                synchronized (this) {
+                    pressaoBuffer = 1 - disponivel / total;
+                }
+            }
+        } catch (RuntimeException e) {
+            LOG.debug("Métricas do produtor indisponíveis", e);
+        }
+    }
+
+    private int limitar(int valor) {
+        return Math.max(minimo, Math.min(maximo, valor));
+    }
+
+    private static double media(double anterior, double amostra) {
+        return anterior == 0 ? amostra : anterior + PESO * (amostra - anterior);
+    }
+
+    private static int comprimento(String valor) {
+        return valor == null ? 0 : valor.length();
+    }
+}
@@ -0,0 +1,23 @@
+package br.com.sourcesystems.processor;
+
+import java.io.File;
+
+/**
+ * Ponto de retomada de um arquivo: registros já confirmados pelo Kafka e o offset em bytes
+ * logo após o último deles (-1 quando desconhecido, caso em que a retomada pula registros).
+ * Tamanho e data de modificação identificam o arquivo ao qual o checkpoint pertence.
+ */
+public record Checkpoint(String arquivo, long tamanhoBytes, long modificadoEm, long registro, long offset) {
+
+    public static Checkpoint inicial(File file) {
+        return new Checkpoint(file.getName(), file.length(), file.lastModified(), 0, -1);
+    }
+
+    public Checkpoint avancar(long registro, long offset) {
+        return new Checkpoint(arquivo, tamanhoBytes, modificadoEm, registro, offset);
+    }
+
+    public boolean correspondeA(File file) {
+        return file.isFile() && file.length() == tamanhoBytes && file.lastModified() == modificadoEm;
+    }
+}
@@ -0,0 +1,158 @@
+package br.com.sourcesystems.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Guarda um checkpoint por arquivo em {@code app.files.checkpoint.dir}, como
+ * {@code <arquivo>.ckpt}. Cada gravação substitui o arquivo de forma atômica. O checkpoint
+ * existe do momento em que o arquivo é movido para {@code app.files.processed.dir} até o
+ * último lote ser confirmado, então na inicialização os checkpoints restantes indicam os
+ * arquivos que precisam ser retomados.
+ */
+@ApplicationScoped
+public class CheckpointStore {
+
+    private static final Logger LOG = Logger.getLogger(CheckpointStore.class);
+
+    private static final String EXTENSAO = ".ckpt";
+
+    @ConfigProperty(name = "app.files.checkpoint.dir", defaultValue = "app/data/checkpoint")
+    private String checkpointDir;
+
+    @ConfigProperty(name = "ingestor.checkpoint.min-interval", defaultValue = "500ms")
+    private Duration intervaloMinimo;
+
+    public Sessao iniciar(File file) {
+        Checkpoint checkpoint = Checkpoint.inicial(file);
+        salvar(checkpoint);
+        return new Sessao(checkpoint);
+    }
+
+    public Sessao retomar(Checkpoint checkpoint) {
+        return new Sessao(checkpoint);
+    }
+
+    public List<Checkpoint> pendentes() {
+        List<Checkpoint> pendentes = new ArrayList<>();
+        Path dir = Paths.get(checkpointDir);
+        if (!Files.isDirectory(dir)) {
+            return pendentes;
+        }
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(dir, "*" + EXTENSAO)) {
+            for (Path arquivo : arquivos) {
+                carregar(arquivo).ifPresent(pendentes::add);
+            }
+        } catch (IOException e) {
+            LOG.error("Erro ao listar checkpoints em " + checkpointDir, e);
+        }
+        return pendentes;
+    }
+
+    public void remover(String arquivo) {
+        try {
+            Files.deleteIfExists(caminho(arquivo));
+        } catch (IOException e) {
+            LOG.error("Erro ao remover checkpoint de " + arquivo, e);
+        }
+    }
+
+    private Optional<Checkpoint> carregar(Path caminho) {
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(caminho, StandardCharsets.UTF_8)) {
+            props.load(reader);
+            return Optional.of(new Checkpoint(
+                props.getProperty("arquivo"),
+                Long.parseLong(props.getProperty("tamanho")),
+                Long.parseLong(props.getProperty("modificado")),
+                Long.parseLong(props.getProperty("registro")),
+                Long.parseLong(props.getProperty("offset"))));
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Checkpoint inválido ignorado: " + caminho, e);
+            return Optional.empty();
+        }
+    }
+
+    private void salvar(Checkpoint checkpoint) {
+        Properties props = new Properties();
+        props.setProperty("arquivo", checkpoint.arquivo());
+        props.setProperty("tamanho", Long.toString(checkpoint.tamanhoBytes()));
+        props.setProperty("modificado", Long.toString(checkpoint.modificadoEm()));
+        props.setProperty("registro", Long.toString(checkpoint.registro()));
+        props.setProperty("offset", Long.toString(checkpoint.offset()));
+        Path destino = caminho(checkpoint.arquivo());
+        Path temporario = destino.resolveSibling(destino.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(destino.getParent());
+            try (Writer writer = Files.newBufferedWriter(temporario, StandardCharsets.UTF_8)) {
+                props.store(writer, null);
+            }
+            try {
+                Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            LOG.error("Erro ao gravar checkpoint de " + checkpoint.arquivo(), e);
+        }
+    }
+
+    private Path caminho(String arquivo) {
+        return Paths.get(checkpointDir, arquivo + EXTENSAO);
+    }
+
+    /**
+     * Checkpoint de um arquivo em processamento. As confirmações são gravadas no máximo uma
+     * vez a cada {@code ingestor.checkpoint.min-interval}; a retomada reenvia no máximo os
+     * lotes confirmados nesse intervalo.
+     */
+    public class Sessao {
+
+        private Checkpoint atual;
+        private long ultimaGravacao = System.nanoTime();
+
+        Sessao(Checkpoint atual) {
+            this.atual = atual;
+        }
+
+        public synchronized void confirmar(long registro, long offset) {
+            atual = atual.avancar(registro, offset);
+            long agora = System.nanoTime();
+            if (agora - ultimaGravacao >= intervaloMinimo.toNanos()) {
+                salvar(atual);
+                ultimaGravacao = agora;
+            }
+        }
+
+        public synchronized Checkpoint atual() {
+            return atual;
+        }
+
+        public synchronized void interromper() {
+            salvar(atual);
+        }
+
+        public void concluir() {
+            remover(atual.arquivo());
+        }
+    }
+}
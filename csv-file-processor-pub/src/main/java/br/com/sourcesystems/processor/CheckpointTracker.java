@@ -0,0 +1,39 @@
+package br.com.sourcesystems.processor;
+
+import java.util.TreeMap;
+
+/**
+ * Acompanha as confirmações dos lotes de um arquivo enviados em paralelo. Os lotes podem ser
+ * confirmados fora de ordem, mas o checkpoint só avança até o último lote de uma sequência
+ * contínua de confirmados, para que a retomada nunca pule um lote ainda pendente.
+ */
+final class CheckpointTracker {
+
+    private final CheckpointStore.Sessao sessao;
+    private final TreeMap<Long, LoteArquivo> confirmados = new TreeMap<>();
+    private long emitidos;
+    private long proximo;
+
+    CheckpointTracker(CheckpointStore.Sessao sessao) {
+        this.sessao = sessao;
+    }
+
+    /**
+     * Reserva o número de sequência do próximo lote, na ordem de leitura do arquivo.
+     */
+    synchronized long registrar() {
+        return emitidos++;
+    }
+
+    synchronized void confirmar(long sequencia, LoteArquivo lote) {
+        confirmados.put(sequencia, lote);
+        LoteArquivo ultimo = null;
+        while (!confirmados.isEmpty() && confirmados.firstKey() == proximo) {
+            ultimo = confirmados.pollFirstEntry().getValue();
+            proximo++;
+        }
+        if (ultimo != null) {
+            sessao.confirmar(ultimo.registroFinal(), ultimo.offsetFinal());
+        }
+    }
+}
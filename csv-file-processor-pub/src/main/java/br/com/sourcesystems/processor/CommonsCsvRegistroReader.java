@@ -0,0 +1,28 @@
+package br.com.sourcesystems.processor;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+public class CommonsCsvRegistroReader implements RegistroReader {
+
+    private final CSVParser parser;
+    private final Iterator<CSVRecord> iterator;
+
+    public CommonsCsvRegistroReader(CSVParser parser) {
+        this.parser = parser;
+        this.iterator = parser.iterator();
+    }
+
+    @Override
+    public Registro next() {
+        return iterator.hasNext() ? new Registro(iterator.next()) : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
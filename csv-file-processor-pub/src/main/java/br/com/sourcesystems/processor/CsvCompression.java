@@ -0,0 +1,59 @@
+package br.com.sourcesystems.processor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+/**
+ * Compressão de um arquivo de entrada, pela extensão: {@code .csv}, {@code .csv.gz} ou
+ * {@code .csv.zst}.
+ */
+public enum CsvCompression {
+
+    NONE(".csv"),
+    GZIP(".csv.gz"),
+    ZSTD(".csv.zst");
+
+    private static final int BUFFER_GZIP = 64 * 1024;
+
+    private final String extensao;
+
+    CsvCompression(String extensao) {
+        this.extensao = extensao;
+    }
+
+    public String extensao() {
+        return extensao;
+    }
+
+    public boolean isComprimido() {
+        return this != NONE;
+    }
+
+    /**
+     * Compressão indicada pelo nome do arquivo, ou {@code null} quando não é um CSV aceito.
+     */
+    public static CsvCompression de(String nome) {
+        String minusculo = nome.toLowerCase(Locale.ROOT);
+        for (CsvCompression compressao : values()) {
+            if (minusculo.endsWith(compressao.extensao)) {
+                return compressao;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Envolve {@code entrada} com o descompressor do formato; sem compressão devolve a própria.
+     */
+    public InputStream descomprimir(InputStream entrada) throws IOException {
+        return switch (this) {
+            case NONE -> entrada;
+            case GZIP -> new GZIPInputStream(entrada, BUFFER_GZIP);
+            case ZSTD -> new ZstdInputStream(entrada);
+        };
+    }
+}
@@ -1,99 +1,295 @@
 package br.com.sourcesystems.processor;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.runtime.configuration.MemorySize;
 import io.smallrye.mutiny.Multi;
 import jakarta.enterprise.context.ApplicationScoped;
 
+/**
+ * Leitor sequencial dos arquivos de entrada. Arquivos {@code .csv.gz} e {@code .csv.zst} são
+ * lidos por um {@link DecompressingInputStream}, que descomprime no executor
+ * {@code decompress} enquanto o parse roda no {@code parse}. Os bytes lidos do disco por lote
+ * vão para {@code ingestor.parse.disco.bytes}, com a tag {@code compressao}, para comparar os
+ * formatos.
+ */
 @ApplicationScoped
 public class CsvFileProcessorBackPressure {
 
 
     private static final Logger LOG = Logger.getLogger(CsvFileProcessorBackPressure.class);
 
-    @ConfigProperty(name = "producer.batch.size", defaultValue = "100")
-    private int batchSize;
+    @ConfigProperty(name = "ingestor.reader.parallel.enabled", defaultValue = "false")
+    private boolean leituraParalela;
+
+    @ConfigProperty(name = "ingestor.reader.decompress.block-size", defaultValue = "256K")
+    private MemorySize blocoDescompressao;
+
+    @ConfigProperty(name = "ingestor.reader.decompress.blocks", defaultValue = "8")
+    private int blocosDescompressao;
+
+    private final CsvParallelReader parallelReader;
+
+    private final RegistroReaderFactory readerFactory;
+
+    private final AdaptiveBatchSizer sizer;
+
+    private final Counter registrosLidos;
+
+    private final Timer tempoLote;
+
+    private final Map<CsvCompression, Counter> bytesDisco = new EnumMap<>(CsvCompression.class);
+
+    private final ExecutionStages estagios;
+
+    public CsvFileProcessorBackPressure(CsvParallelReader parallelReader, RegistroReaderFactory readerFactory, AdaptiveBatchSizer sizer,
+            MeterRegistry meterRegistry, ExecutionStages estagios) {
+        this.parallelReader = parallelReader;
+        this.readerFactory = readerFactory;
+        this.sizer = sizer;
+        this.estagios = estagios;
+        this.registrosLidos = meterRegistry.counter("ingestor.parse.registros");
+        this.tempoLote = Timer.builder("ingestor.parse.lote")
+            .description("Tempo de leitura e interpretação de um lote")
+            .tag("modo", "sequencial")
+            .register(meterRegistry);
+        for (CsvCompression compressao : CsvCompression.values()) {
+            bytesDisco.put(compressao, Counter.builder("ingestor.parse.disco.bytes")
+                .description("Bytes lidos do disco pelo leitor sequencial")
+                .baseUnit("bytes")
+                .tag("compressao", compressao.name().toLowerCase())
+                .register(meterRegistry));
+        }
+    }
 
     private static class CsvState {
-        final Reader reader;
-        final Iterator<CSVRecord> iterator;
+        final RegistroReader reader;
+        final long offsetBase;
+        final CsvCompression compressao;
+        final LongSupplier lidosDisco;
+        long registros;
+        long contadosDisco;
+
+        CsvState(RegistroReader reader, long offsetBase, long registros) {
+            this(reader, offsetBase, registros, CsvCompression.NONE, () -> Math.max(0, reader.posicaoBytes()));
+        }
 
-        CsvState(Reader reader, Iterator<CSVRecord> iterator) {
+        CsvState(RegistroReader reader, long offsetBase, long registros, CsvCompression compressao, LongSupplier lidosDisco) {
             this.reader = reader;
-            this.iterator = iterator;
+            this.offsetBase = offsetBase;
+            this.registros = registros;
+            this.compressao = compressao;
+            this.lidosDisco = lidosDisco;
+        }
+
+        /**
+         * Offset de retomada; -1 em arquivo comprimido, que não permite posicionar a leitura
+         * e é retomado pela quantidade de registros.
+         */
+        long offset() {
+            long posicao = reader.posicaoBytes();
+            return posicao < 0 || compressao.isComprimido() ? -1 : offsetBase + posicao;
+        }
+
+        /** Bytes lidos do disco desde a última chamada; sem {@code lidosDisco} a origem não é um arquivo. */
+        long novosBytesDisco() {
+            if (lidosDisco == null) {
+                return 0;
+            }
+            long total = lidosDisco.getAsLong();
+            long novos = total - contadosDisco;
+            contadosDisco = total;
+            return Math.max(0, novos);
         }
     }
 
     public Multi<List<Registro>> processFile(File file) {
+        return lerArquivo(file, null).onItem().transform(LoteArquivo::registros);
+    }
 
-        Multi<List<Registro>> multi = Multi.createFrom().generator(
-        () -> {
-                Reader reader = null;
-                try {
-                    reader = new FileReader(file);
-                } catch (FileNotFoundException e) {
-                    LOG.infof("Não foi possível ler o arquivo {}", file.getName());
-                    throw new RuntimeException("Arquivo não encontrado", e);
-                } 
-                CSVFormat format = null;
-                format = CSVFormat.Builder.create()
-                .setHeader()
-                .setSkipHeaderRecord(true)
-                .setIgnoreHeaderCase(true)
-                .setTrim(true)
-                .setDelimiter(';')
-                .get();
-                    CSVParser csvParser = null;
-                    try {
-                        csvParser = CSVParser.parse(reader, format);
-                    } catch (IOException e) {
-                        LOG.error("");
-                    }
-                return new CsvState(reader, csvParser.iterator());
-            },
+    /**
+     * Lê o arquivo em lotes com a posição de retomada de cada um. Com {@code retomada}, começa
+     * logo após o último registro confirmado: pelo offset em bytes quando conhecido, senão
+     * pulando a quantidade de registros do checkpoint. O tamanho de cada lote vem do
+     * {@link AdaptiveBatchSizer} e a leitura roda no executor {@code parse}. Registros lidos e tempo por lote são medidos uma vez por
+     * lote, fora do laço de registros.
+     */
+    public Multi<LoteArquivo> lerArquivo(File file, Checkpoint retomada) {
+        long registroInicial = retomada == null ? 0 : retomada.registro();
+        CsvCompression compressao = compressao(file);
+        long offsetInicial = retomada == null || compressao.isComprimido() ? -1 : retomada.offset();
+
+        if (!compressao.isComprimido() && leituraParalela && parallelReader.suporta(file) && (registroInicial == 0 || offsetInicial > 0)) {
+            return parallelReader.lerArquivo(file, sizer::tamanhoLote, registroInicial, offsetInicial)
+                .onItem().invoke(lote -> registrosLidos.increment(lote.registros().size()))
+                .runSubscriptionOn(estagios.parse());
+        }
+
+        return ler(file.getName(), () -> abrir(file, compressao, registroInicial, offsetInicial));
+    }
+
+    /**
+     * Lê um CSV recebido como stream, como o corpo de um upload, em lotes do mesmo jeito que
+     * {@link #lerArquivo}. A compressão vem da extensão de {@code nome}. A leitura consome o
+     * stream conforme os lotes são pedidos, então quem envia espera enquanto o pipeline está
+     * cheio. O stream é fechado ao fim, em falha ou no cancelamento.
+     */
+    public Multi<LoteArquivo> lerStream(String nome, InputStream entrada) {
+        CsvCompression compressao = CsvCompression.de(nome);
+        return ler(nome, () -> abrir(nome, entrada, compressao == null ? CsvCompression.NONE : compressao));
+    }
+
+    /**
+     * Lê em lotes a partir do estado aberto por {@code abertura}. O reader é fechado ao fim, em
+     * falha e também no cancelamento (falha no envio, desligamento ou upload interrompido), para
+     * não deixar o arquivo aberto nem a tarefa de descompressão esperando um leitor que não vem.
+     */
+    private Multi<LoteArquivo> ler(String nome, Supplier<CsvState> abertura) {
+        Multi<LoteArquivo> multi = Multi.createFrom().resource(abertura, aberto -> Multi.createFrom().generator(
+            () -> aberto,
             (state, emitter) -> {
                 try {
-                    List<Registro> batch = new ArrayList<>(batchSize);
-                    while (state.iterator.hasNext() && batch.size() < batchSize) {
-                        CSVRecord records = state.iterator.next();
-                        batch.add(new Registro(records));
+                    long inicio = System.nanoTime();
+                    int batchSize = sizer.tamanhoLote();
+                    RegistroBatch.Builder batch = RegistroBatch.builder(batchSize);
+                    while (batch.tamanho() < batchSize && state.reader.lerPara(batch)) {
+                        // o leitor grava cada registro direto nas colunas do lote
                     }
 
                     if (!batch.isEmpty()) {
-                        emitter.emit(batch);
+                        state.registros += batch.tamanho();
+                        tempoLote.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+                        registrosLidos.increment(batch.tamanho());
+                        if (state.lidosDisco != null) {
+                            bytesDisco.get(state.compressao).increment(state.novosBytesDisco());
+                        }
+                        emitter.emit(new LoteArquivo(batch.construir(), state.registros, state.offset()));
                     } else {
                         emitter.complete();
-                        state.reader.close();
                     }
                 } catch (Exception e) {
-                    try {
-                        state.reader.close();
-                        LOG.infof("Reader fechado após falha: %s", file.getName());
-                    } catch (IOException ex) {
-                        LOG.error("Erro ao fechar o reader após falha", ex);
-                    }
+                    LOG.infof("Falha na leitura de %s, o reader será fechado", nome);
                     emitter.fail(e);
                 }
                 return state;
             }
-        );
+        ))
+        .withFinalizer(state -> {
+            try {
+                state.reader.close();
+            } catch (IOException e) {
+                LOG.error("Erro ao fechar o reader de " + nome, e);
+            }
+        });
+
+        return multi.runSubscriptionOn(estagios.parse());
+
+    }
+
+    private CsvState abrir(File file, CsvCompression compressao, long registroInicial, long offsetInicial) {
+        Reader reader = null;
+        try {
+            if (compressao.isComprimido()) {
+                DecompressingInputStream entrada = new DecompressingInputStream(file, compressao, estagios.descompressao(),
+                    (int) blocoDescompressao.asLongValue(), blocosDescompressao);
+                reader = new InputStreamReader(entrada, StandardCharsets.UTF_8);
+                CsvState state = new CsvState(readerFactory.abrir(reader), 0, 0, compressao, entrada::bytesLidos);
+                pular(file, state, registroInicial);
+                return state;
+            }
+            if (offsetInicial > 0) {
+                String[] cabecalho;
+                try (RegistroCsvTokenizer tokenizer = RegistroCsvTokenizer.comCabecalho(new FileReader(file, StandardCharsets.UTF_8))) {
+                    cabecalho = tokenizer.getCabecalho();
+                }
+                FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                channel.position(offsetInicial);
+                reader = Channels.newReader(channel, StandardCharsets.UTF_8);
+                LOG.infof("Retomando %s a partir do byte %d (registro %d)", file.getName(), offsetInicial, registroInicial);
+                return new CsvState(readerFactory.abrir(reader, cabecalho), offsetInicial, registroInicial);
+            }
+            reader = new FileReader(file, StandardCharsets.UTF_8);
+            CsvState state = new CsvState(readerFactory.abrir(reader), 0, 0);
+            pular(file, state, registroInicial);
+            return state;
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            LOG.infof("Não foi possível ler o arquivo %s", file.getName());
+            throw new RuntimeException("Arquivo não encontrado", e);
+        } catch (IOException e) {
+            fechar(reader);
+            LOG.error("Erro ao abrir o arquivo " + file.getName(), e);
+            throw new RuntimeException("Erro ao ler o arquivo: " + file.getName(), e);
+        } catch (RuntimeException e) {
+            fechar(reader);
+            throw e;
+        }
+    }
 
-        return multi.runSubscriptionOn(Executors.newVirtualThreadPerTaskExecutor());
+    private CsvState abrir(String nome, InputStream entrada, CsvCompression compressao) {
+        InputStream origem = entrada;
+        try {
+            if (compressao.isComprimido()) {
+                origem = new DecompressingInputStream(nome, entrada, compressao, estagios.descompressao(),
+                    (int) blocoDescompressao.asLongValue(), blocosDescompressao);
+            }
+            return new CsvState(readerFactory.abrir(new InputStreamReader(origem, StandardCharsets.UTF_8)), 0, 0, compressao, null);
+        } catch (IOException e) {
+            fechar(origem);
+            LOG.error("Erro ao abrir o stream " + nome, e);
+            throw new RuntimeException("Erro ao ler o stream: " + nome, e);
+        } catch (RuntimeException e) {
+            fechar(origem);
+            throw e;
+        }
+    }
 
+    private static void pular(File file, CsvState state, long registroInicial) throws IOException {
+        if (registroInicial > 0) {
+            LOG.infof("Retomando %s a partir do registro %d", file.getName(), registroInicial);
+            while (state.registros < registroInicial && state.reader.next() != null) {
+                state.registros++;
+            }
+        }
+    }
+
+    private static CsvCompression compressao(File file) {
+        CsvCompression compressao = CsvCompression.de(file.getName());
+        return compressao == null ? CsvCompression.NONE : compressao;
+    }
+
+    private void fechar(Closeable recurso) {
+        if (recurso == null) {
+            return;
+        }
+        try {
+            recurso.close();
+        } catch (IOException e) {
+            LOG.error("Erro ao fechar o reader após falha", e);
+        }
     }
 
 }
@@ -0,0 +1,390 @@
+package br.com.sourcesystems.processor;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.runtime.configuration.MemorySize;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Leitura paralela de arquivos CSV grandes.
+ *
+ * O arquivo é dividido em faixas de bytes que sempre começam e terminam em fronteira
+ * de registro (respeitando campos entre aspas com quebra de linha). Cada faixa é mapeada
+ * em memória e interpretada no executor {@code parse} do {@link ExecutionStages}, com no máximo
+ * {@code ingestor.reader.parallel.workers} faixas em andamento por arquivo. Os lotes
+ * são emitidos na ordem do arquivo e somente conforme a demanda do assinante.
+ *
+ * As faixas já interpretadas ficam em memória até serem emitidas, então a janela também é
+ * limitada por {@code ingestor.reader.parallel.readahead}: no máximo {@code readahead / chunk-size}
+ * faixas (pelo menos uma) à frente do assinante. O padrão cabe os {@code workers} com o
+ * {@code chunk-size} padrão; com menos espaço os workers excedentes ficam parados, o que é
+ * avisado no log ao abrir o arquivo.
+ */
+@ApplicationScoped
+public class CsvParallelReader {
+
+    private static final Logger LOG = Logger.getLogger(CsvParallelReader.class);
+
+    private static final int SCAN_BUFFER_SIZE = 1 << 20;
+
+    /** Tamanho máximo da linha de cabeçalho; um arquivo sem quebra de linha para aqui. */
+    static final int LIMITE_CABECALHO = 1 << 20;
+
+    @ConfigProperty(name = "ingestor.reader.parallel.workers", defaultValue = "4")
+    private int workers;
+
+    @ConfigProperty(name = "ingestor.reader.parallel.chunk-size", defaultValue = "64M")
+    private MemorySize chunkSize;
+
+    @ConfigProperty(name = "ingestor.reader.parallel.readahead", defaultValue = "256M")
+    private MemorySize readahead;
+
+    private final RegistroReaderFactory readerFactory;
+
+    private final Timer tempoLote;
+
+    private final ExecutionStages estagios;
+
+    public CsvParallelReader(RegistroReaderFactory readerFactory, MeterRegistry meterRegistry, ExecutionStages estagios) {
+        this.readerFactory = readerFactory;
+        this.estagios = estagios;
+        this.tempoLote = Timer.builder("ingestor.parse.lote")
+            .description("Tempo de leitura e interpretação de um lote")
+            .tag("modo", "paralelo")
+            .register(meterRegistry);
+    }
+
+    public boolean suporta(File file) {
+        return file.length() > chunkSize.asLongValue();
+    }
+
+    /**
+     * Lê o arquivo em lotes com a posição de retomada de cada um. Com {@code offsetInicial}
+     * maior que zero a leitura começa nesse byte, que precisa ser uma fronteira de registro;
+     * {@code registroInicial} é a quantidade de registros anteriores a ele. O tamanho de lote é
+     * consultado no início de cada faixa.
+     */
+    public Multi<LoteArquivo> lerArquivo(File file, IntSupplier tamanhoLote, long registroInicial, long offsetInicial) {
+        return Multi.createFrom().resource(
+                () -> abrir(file, tamanhoLote, registroInicial, offsetInicial),
+                leitura -> Multi.createFrom().<LeituraParalela, CompletableFuture<List<LoteArquivo>>>generator(
+                    () -> leitura,
+                    (state, emitter) -> {
+                        try {
+                            CompletableFuture<List<LoteArquivo>> proximo = state.proximo();
+                            if (proximo == null) {
+                                emitter.complete();
+                            } else {
+                                emitter.emit(proximo);
+                            }
+                        } catch (Exception e) {
+                            emitter.fail(new RuntimeException("Erro ao ler o arquivo: " + file.getName(), e));
+                        }
+                        return state;
+                    })
+                    .onItem().transformToUniAndConcatenate(futuro -> Uni.createFrom().completionStage(futuro))
+                    .onItem().transformToIterable(leitura::numerar))
+            .withFinalizer(LeituraParalela::close);
+    }
+
+    private LeituraParalela abrir(File file, IntSupplier tamanhoLote, long registroInicial, long offsetInicial) {
+        try {
+            return new LeituraParalela(file, tamanhoLote, registroInicial, offsetInicial);
+        } catch (IOException e) {
+            LOG.infof("Não foi possível ler o arquivo %s", file.getName());
+            throw new RuntimeException("Erro ao abrir o arquivo: " + file.getName(), e);
+        }
+    }
+
+    private class LeituraParalela implements Closeable {
+
+        private final File file;
+        private final IntSupplier tamanhoLote;
+        private final FileChannel channel;
+        private final long tamanho;
+        private final long tamanhoFaixa;
+        private final int limiteJanela;
+        private final DelimitadorRegistros delimitador;
+        private final String[] cabecalho;
+        private final Deque<CompletableFuture<List<LoteArquivo>>> janela = new ArrayDeque<>();
+        private long proximoInicio;
+        private long registrosEmitidos;
+
+        LeituraParalela(File file, IntSupplier tamanhoLote, long registroInicial, long offsetInicial) throws IOException {
+            this.file = file;
+            this.tamanhoLote = tamanhoLote;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.tamanho = channel.size();
+            this.tamanhoFaixa = Math.max(1, chunkSize.asLongValue());
+            this.limiteJanela = (int) Math.max(1, Math.min(workers, readahead.asLongValue() / tamanhoFaixa));
+            if (limiteJanela < workers) {
+                LOG.warnf("ingestor.reader.parallel.readahead=%d bytes comporta %d faixas de %d bytes; só %d dos %d workers "
+                    + "serão usados", readahead.asLongValue(), limiteJanela, tamanhoFaixa, limiteJanela, workers);
+            }
+            this.delimitador = new DelimitadorRegistros(channel, tamanho);
+            long inicio = 0;
+            String[] valores = null;
+            while (valores == null && inicio < tamanho) {
+                long fim = delimitador.proximaFronteira(inicio, 0, LIMITE_CABECALHO);
+                if (fim < 0) {
+                    throw new IOException("Cabeçalho de " + file.getName() + " sem fim de linha nos primeiros "
+                        + LIMITE_CABECALHO + " bytes");
+                }
+                valores = lerCabecalho(inicio, fim);
+                inicio = fim;
+            }
+            if (valores == null) {
+                throw new IOException("Cabeçalho não encontrado em " + file.getName());
+            }
+            this.cabecalho = valores;
+            this.proximoInicio = Math.max(inicio, offsetInicial);
+            this.registrosEmitidos = registroInicial;
+            LOG.infof("Leitura paralela de %s: %d bytes, faixas de %d bytes, %d faixas em andamento",
+                file.getName(), tamanho, tamanhoFaixa, limiteJanela);
+        }
+
+        CompletableFuture<List<LoteArquivo>> proximo() throws IOException {
+            while (janela.size() < limiteJanela && proximoInicio < tamanho) {
+                long fim = delimitador.proximaFronteira(proximoInicio, tamanhoFaixa);
+                long comprimento = fim - proximoInicio;
+                if (comprimento > Integer.MAX_VALUE) {
+                    throw new IOException("Registro maior que o limite de mapeamento em " + file.getName());
+                }
+                long inicio = proximoInicio;
+                ByteBuffer faixa = channel.map(FileChannel.MapMode.READ_ONLY, inicio, comprimento);
+                janela.add(CompletableFuture.supplyAsync(() -> lerFaixa(inicio, faixa), estagios.parse()));
+                proximoInicio = fim;
+            }
+            return janela.poll();
+        }
+
+        private String[] lerCabecalho(long inicio, long fim) throws IOException {
+            ByteBuffer bytes = ByteBuffer.allocate((int) (fim - inicio));
+            while (bytes.hasRemaining() && channel.read(bytes, inicio + bytes.position()) >= 0) {
+                // leitura posicional até completar a linha
+            }
+            String linha = new String(bytes.array(), 0, bytes.position(), StandardCharsets.UTF_8);
+            CSVFormat format = CSVFormat.Builder.create()
+                .setTrim(true)
+                .setDelimiter(';')
+                .get();
+            try (CSVParser parser = CSVParser.parse(new StringReader(linha), format)) {
+                List<CSVRecord> registros = parser.getRecords();
+                return registros.isEmpty() ? null : registros.get(0).values();
+            }
+        }
+
+        /**
+         * Converte a contagem de registros relativa à faixa em contagem desde o início do
+         * arquivo. Chamado na ordem de emissão das faixas.
+         */
+        List<LoteArquivo> numerar(List<LoteArquivo> lotes) {
+            List<LoteArquivo> numerados = new ArrayList<>(lotes.size());
+            long base = registrosEmitidos;
+            for (LoteArquivo lote : lotes) {
+                numerados.add(new LoteArquivo(lote.registros(), base + lote.registroFinal(), lote.offsetFinal()));
+            }
+            if (!numerados.isEmpty()) {
+                registrosEmitidos = numerados.get(numerados.size() - 1).registroFinal();
+            }
+            return numerados;
+        }
+
+        /**
+         * Interpreta a faixa em lotes. O tempo da faixa é distribuído igualmente entre os
+         * lotes dela no timer {@code ingestor.parse.lote}.
+         */
+        private List<LoteArquivo> lerFaixa(long inicio, ByteBuffer faixa) {
+            long inicioNanos = System.nanoTime();
+            List<LoteArquivo> lotes = new ArrayList<>();
+            long lidos = 0;
+            int batchSize = tamanhoLote.getAsInt();
+            try (Reader reader = new InputStreamReader(new ByteBufferInputStream(faixa), StandardCharsets.UTF_8);
+                RegistroReader registros = readerFactory.abrir(reader, cabecalho)) {
+
+                RegistroBatch.Builder batch = RegistroBatch.builder(batchSize);
+                while (registros.lerPara(batch)) {
+                    if (batch.tamanho() >= batchSize) {
+                        lidos += batch.tamanho();
+                        lotes.add(new LoteArquivo(batch.construir(), lidos, offset(inicio, registros)));
+                        batch = RegistroBatch.builder(batchSize);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    lidos += batch.tamanho();
+                    lotes.add(new LoteArquivo(batch.construir(), lidos, offset(inicio, registros)));
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Erro ao ler faixa do arquivo: " + file.getName(), e);
+            }
+            if (!lotes.isEmpty()) {
+                long porLote = (System.nanoTime() - inicioNanos) / lotes.size();
+                for (int i = 0; i < lotes.size(); i++) {
+                    tempoLote.record(porLote, TimeUnit.NANOSECONDS);
+                }
+            }
+            return lotes;
+        }
+
+        private long offset(long inicio, RegistroReader reader) {
+            long posicao = reader.posicaoBytes();
+            return posicao < 0 ? -1 : inicio + posicao;
+        }
+
+        @Override
+        public void close() {
+            janela.forEach(futuro -> futuro.cancel(false));
+            janela.clear();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.error("Erro ao fechar o arquivo " + file.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Localiza fronteiras de registro percorrendo o arquivo sequencialmente com a mesma
+     * regra de aspas do commons-csv: aspas só abrem um campo quando são o primeiro caractere
+     * dele, e {@code ""} dentro de um campo entre aspas é uma aspa literal.
+     */
+    static class DelimitadorRegistros {
+
+        private static final int INICIO_CAMPO = 0;
+        private static final int SEM_ASPAS = 1;
+        private static final int ENTRE_ASPAS = 2;
+        private static final int ASPAS_EM_CAMPO = 3;
+
+        private final FileChannel channel;
+        private final long tamanho;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(SCAN_BUFFER_SIZE);
+
+        DelimitadorRegistros(FileChannel channel, long tamanho) {
+            this.channel = channel;
+            this.tamanho = tamanho;
+        }
+
+        /**
+         * Retorna a posição logo após o primeiro fim de registro encontrado a partir de
+         * {@code inicio + minimo}, ou o tamanho do arquivo. {@code inicio} precisa ser
+         * o começo de um registro.
+         */
+        long proximaFronteira(long inicio, long minimo) throws IOException {
+            return proximaFronteira(inicio, minimo, tamanho - inicio);
+        }
+
+        /**
+         * Como {@link #proximaFronteira(long, long)}, mas examina no máximo {@code maximo} bytes
+         * a partir de {@code inicio} e retorna {@code -1} se não houver fim de registro neles
+         * antes do fim do arquivo.
+         */
+        long proximaFronteira(long inicio, long minimo, long maximo) throws IOException {
+            long alvo = inicio + minimo;
+            long limite = Math.min(tamanho, inicio + maximo);
+            long posicao = inicio;
+            int estado = INICIO_CAMPO;
+            while (posicao < limite) {
+                buffer.clear();
+                int lidos = channel.read(buffer, posicao);
+                if (lidos <= 0) {
+                    break;
+                }
+                lidos = (int) Math.min(lidos, limite - posicao);
+                buffer.flip();
+                for (int i = 0; i < lidos; i++) {
+                    byte b = buffer.get(i);
+                    switch (estado) {
+                        case ENTRE_ASPAS -> {
+                            if (b == '"') {
+                                estado = ASPAS_EM_CAMPO;
+                            }
+                            continue;
+                        }
+                        case ASPAS_EM_CAMPO -> {
+                            if (b == '"') {
+                                estado = ENTRE_ASPAS;
+                                continue;
+                            }
+                        }
+                        case INICIO_CAMPO -> {
+                            if (b == '"') {
+                                estado = ENTRE_ASPAS;
+                                continue;
+                            }
+                        }
+                        default -> {
+                        }
+                    }
+                    if (b == ';') {
+                        estado = INICIO_CAMPO;
+                    } else if (b == '\n') {
+                        estado = INICIO_CAMPO;
+                        if (posicao + i >= alvo) {
+                            return posicao + i + 1;
+                        }
+                    } else if (b != '\r') {
+                        estado = SEM_ASPAS;
+                    }
+                }
+                posicao += lidos;
+            }
+            return limite < tamanho ? -1 : tamanho;
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
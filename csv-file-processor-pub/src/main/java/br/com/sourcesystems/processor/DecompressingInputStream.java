@@ -0,0 +1,252 @@
+package br.com.sourcesystems.processor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lê um arquivo ou stream comprimido descomprimindo em outra thread: uma tarefa no
+ * {@code executor} lê a origem, descomprime em blocos de {@code tamanhoBloco} bytes e os entrega por uma fila
+ * de no máximo {@code blocos} blocos, da qual este stream lê. Assim a descompressão e o parse
+ * rodam em núcleos diferentes, e a memória entre os dois fica limitada à fila; com a fila cheia
+ * a tarefa espera o parse. Os blocos já lidos voltam para a tarefa e são reaproveitados.
+ *
+ * {@link #bytesLidos()} é o total lido da origem, ainda comprimido. Um erro na descompressão é
+ * lançado pelo {@link #read} depois dos blocos já entregues. {@link #close()} interrompe a
+ * tarefa e fecha a origem, inclusive com a leitura parada no meio do arquivo, liberando a
+ * thread de descompressão.
+ */
+public final class DecompressingInputStream extends InputStream {
+
+    private static final Bloco FIM = new Bloco(new byte[0], 0);
+
+    private static final long ESPERA_MS = 100;
+
+    private final String nome;
+    private final InputStream origem;
+    private final CsvCompression compressao;
+    private final int tamanhoBloco;
+    private final BlockingQueue<Bloco> cheios;
+    private final BlockingQueue<byte[]> livres;
+    private final AtomicLong bytesLidos = new AtomicLong();
+    private volatile Throwable erro;
+    private volatile boolean fechado;
+
+    /** Thread que roda a tarefa enquanto ela está ativa; interrompida pelo {@link #close()}. */
+    private Thread tarefa;
+
+    private Bloco atual;
+    private int posicao;
+
+    /**
+     * Abre o arquivo na thread que chama, para que um arquivo inexistente falhe aqui, e inicia
+     * a descompressão no {@code executor}.
+     */
+    public DecompressingInputStream(File file, CsvCompression compressao, Executor executor, int tamanhoBloco, int blocos)
+            throws FileNotFoundException {
+        this(file.getName(), new FileInputStream(file), compressao, executor, tamanhoBloco, blocos);
+    }
+
+    /**
+     * Descomprime {@code origem}, lida somente pela tarefa no {@code executor} e fechada por ela.
+     */
+    public DecompressingInputStream(String nome, InputStream origem, CsvCompression compressao, Executor executor,
+            int tamanhoBloco, int blocos) {
+        if (tamanhoBloco < 1 || blocos < 1) {
+            fechar(origem);
+            throw new IllegalArgumentException("Buffer de descompressão inválido: bloco=" + tamanhoBloco + ", blocos=" + blocos);
+        }
+        this.nome = nome;
+        this.compressao = compressao;
+        this.tamanhoBloco = tamanhoBloco;
+        this.cheios = new ArrayBlockingQueue<>(blocos + 1);
+        this.livres = new ArrayBlockingQueue<>(blocos + 1);
+        this.origem = origem;
+        try {
+            executor.execute(this::descomprimir);
+        } catch (RuntimeException e) {
+            fechar(origem);
+            throw e;
+        }
+    }
+
+    /** Bytes lidos da origem até agora, antes da descompressão. */
+    public long bytesLidos() {
+        return bytesLidos.get();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!garantirBloco()) {
+            return -1;
+        }
+        return atual.dados()[posicao++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] destino, int de, int tamanho) throws IOException {
+        if (tamanho == 0) {
+            return 0;
+        }
+        if (!garantirBloco()) {
+            return -1;
+        }
+        int copiados = Math.min(tamanho, atual.tamanho() - posicao);
+        System.arraycopy(atual.dados(), posicao, destino, de, copiados);
+        posicao += copiados;
+        return copiados;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (fechado) {
+                return;
+            }
+            fechado = true;
+            if (tarefa != null) {
+                tarefa.interrupt();
+            }
+        }
+        // a tarefa pode estar bloqueada lendo a origem, o que a interrupção não desfaz
+        fechar(origem);
+        cheios.clear();
+        livres.clear();
+        // acorda uma leitura que esteja esperando bloco em outra thread
+        cheios.offer(FIM);
+        atual = FIM;
+    }
+
+    private boolean garantirBloco() throws IOException {
+        if (atual == FIM) {
+            return false;
+        }
+        if (atual != null && posicao < atual.tamanho()) {
+            return true;
+        }
+        if (atual != null) {
+            livres.offer(atual.dados());
+        }
+        try {
+            atual = cheios.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Leitura de " + nome + " interrompida");
+        }
+        posicao = 0;
+        if (atual == FIM) {
+            Throwable falha = erro;
+            if (falha != null) {
+                throw new IOException("Erro ao descomprimir " + nome, falha);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tarefa de descompressão. Termina ao fim da origem, em erro ou quando o stream é fechado;
+     * em todos os casos o fim é sinalizado na fila.
+     */
+    private void descomprimir() {
+        synchronized (this) {
+            if (fechado) {
+                fechar(origem);
+                return;
+            }
+            tarefa = Thread.currentThread();
+        }
+        try {
+            copiar();
+        } finally {
+            synchronized (this) {
+                tarefa = null;
+                // uma interrupção do close() não pode sobrar para a próxima tarefa do executor
+                Thread.interrupted();
+            }
+        }
+    }
+
+    private void copiar() {
+        try (InputStream contada = new Contador(origem); InputStream entrada = compressao.descomprimir(contada)) {
+            while (!fechado) {
+                byte[] dados = livres.poll();
+                if (dados == null) {
+                    dados = new byte[tamanhoBloco];
+                }
+                int lidos = entrada.readNBytes(dados, 0, tamanhoBloco);
+                if (lidos > 0 && !entregar(new Bloco(dados, lidos))) {
+                    return;
+                }
+                if (lidos < tamanhoBloco) {
+                    break;
+                }
+            }
+        } catch (Throwable e) {
+            erro = e;
+        }
+        entregar(FIM);
+    }
+
+    /**
+     * Espera vaga na fila, desistindo se o stream for fechado no meio tempo.
+     */
+    private boolean entregar(Bloco bloco) {
+        try {
+            while (!fechado) {
+                if (cheios.offer(bloco, ESPERA_MS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private static void fechar(InputStream origem) {
+        try {
+            origem.close();
+        } catch (IOException e) {
+            // nada mais será lido dela; o erro de fechamento não muda o resultado
+        }
+    }
+
+    private record Bloco(byte[] dados, int tamanho) {
+    }
+
+    /** Conta os bytes lidos da origem, antes da descompressão. */
+    private final class Contador extends FilterInputStream {
+
+        Contador(InputStream entrada) {
+            super(entrada);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                bytesLidos.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] destino, int de, int tamanho) throws IOException {
+            int lidos = super.read(destino, de, tamanho);
+            if (lidos > 0) {
+                bytesLidos.addAndGet(lidos);
+            }
+            return lidos;
+        }
+    }
+}
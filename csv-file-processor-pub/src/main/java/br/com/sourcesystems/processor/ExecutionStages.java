@@ -0,0 +1,126 @@
+package br.com.sourcesystems.processor;
+
+import java.time.Duration;
+import java.util.Locale;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.ShutdownEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+
+/**
+ * Executores nomeados das etapas da ingestão, com concorrência limitada e encerrados com a
+ * aplicação: {@code parse} lê e interpreta os arquivos, {@code decompress} descomprime os
+ * arquivos {@code .csv.gz} e {@code .csv.zst} à frente do parse, {@code serialize} monta o
+ * payload dos lotes e {@code send} entrega as mensagens ao produtor e trata as confirmações do
+ * broker, para que checkpoints e progresso não rodem na thread do produtor Kafka.
+ *
+ * Cada arquivo ou upload comprimido ocupa uma vaga de {@code decompress} enquanto é lido, e o
+ * parse que espera por ele segura a sua vaga de {@code parse}. Por isso o limite de
+ * {@code decompress} é pelo menos a soma de {@code ingestor.files.max-concurrent},
+ * {@code ingestor.files.fast-lane.max-concurrent} e {@code ingestor.upload.max-concurrent};
+ * um valor configurado menor é elevado a essa soma na inicialização.
+ */
+@ApplicationScoped
+public class ExecutionStages {
+
+    private static final Logger LOG = Logger.getLogger(ExecutionStages.class);
+
+    @ConfigProperty(name = "ingestor.executor.parse.max-concurrency", defaultValue = "4")
+    private int concorrenciaParse;
+
+    @ConfigProperty(name = "ingestor.executor.parse.threads", defaultValue = "virtual")
+    private String threadsParse;
+
+    @ConfigProperty(name = "ingestor.executor.decompress.max-concurrency", defaultValue = "6")
+    private int concorrenciaDescompressao;
+
+    @ConfigProperty(name = "ingestor.executor.decompress.threads", defaultValue = "platform")
+    private String threadsDescompressao;
+
+    @ConfigProperty(name = "ingestor.executor.serialize.max-concurrency", defaultValue = "4")
+    private int concorrenciaSerializacao;
+
+    @ConfigProperty(name = "ingestor.executor.serialize.threads", defaultValue = "platform")
+    private String threadsSerializacao;
+
+    @ConfigProperty(name = "ingestor.executor.send.max-concurrency", defaultValue = "4")
+    private int concorrenciaEnvio;
+
+    @ConfigProperty(name = "ingestor.executor.send.threads", defaultValue = "virtual")
+    private String threadsEnvio;
+
+    @ConfigProperty(name = "ingestor.executor.shutdown-timeout", defaultValue = "10s")
+    private Duration tempoLimite;
+
+    @ConfigProperty(name = "ingestor.files.max-concurrent", defaultValue = "2")
+    private int arquivosSimultaneos;
+
+    @ConfigProperty(name = "ingestor.files.fast-lane.max-concurrent", defaultValue = "2")
+    private int arquivosRapidosSimultaneos;
+
+    @ConfigProperty(name = "ingestor.upload.max-concurrent", defaultValue = "2")
+    private int uploadsSimultaneos;
+
+    private final MeterRegistry meterRegistry;
+
+    private ExecutorServiceWrapper parse;
+
+    private ExecutorServiceWrapper descompressao;
+
+    private ExecutorServiceWrapper serializacao;
+
+    private ExecutorServiceWrapper envio;
+
+    public ExecutionStages(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        parse = ExecutorServiceWrapper.criar("parse", threads(threadsParse), concorrenciaParse, tempoLimite, meterRegistry);
+        int leiturasSimultaneas = arquivosSimultaneos + arquivosRapidosSimultaneos + uploadsSimultaneos;
+        int limiteDescompressao = Math.max(concorrenciaDescompressao, leiturasSimultaneas);
+        if (limiteDescompressao > concorrenciaDescompressao) {
+            LOG.warnf("ingestor.executor.decompress.max-concurrency=%d é menor que as %d leituras simultâneas "
+                + "(arquivos, fila rápida e uploads); usando %d", concorrenciaDescompressao, leiturasSimultaneas,
+                limiteDescompressao);
+        }
+        descompressao = ExecutorServiceWrapper.criar("decompress", threads(threadsDescompressao), limiteDescompressao,
+            tempoLimite, meterRegistry);
+        serializacao = ExecutorServiceWrapper.criar("serialize", threads(threadsSerializacao), concorrenciaSerializacao,
+            tempoLimite, meterRegistry);
+        envio = ExecutorServiceWrapper.criar("send", threads(threadsEnvio), concorrenciaEnvio, tempoLimite, meterRegistry);
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        parse.close();
+        descompressao.close();
+        serializacao.close();
+        envio.close();
+    }
+
+    public ExecutorServiceWrapper parse() {
+        return parse;
+    }
+
+    public ExecutorServiceWrapper descompressao() {
+        return descompressao;
+    }
+
+    public ExecutorServiceWrapper serializacao() {
+        return serializacao;
+    }
+
+    public ExecutorServiceWrapper envio() {
+        return envio;
+    }
+
+    private static ExecutorServiceWrapper.Threads threads(String valor) {
+        return ExecutorServiceWrapper.Threads.valueOf(valor.trim().toUpperCase(Locale.ROOT));
+    }
+}
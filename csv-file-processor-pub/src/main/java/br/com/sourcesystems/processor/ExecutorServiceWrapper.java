@@ -0,0 +1,163 @@
+package br.com.sourcesystems.processor;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.logging.Logger;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Executor de uma etapa do processamento com concorrência limitada: no máximo {@code limite}
+ * tarefas rodam ao mesmo tempo no {@link ExecutorService} envolvido e as demais esperam em
+ * fila, sem bloquear quem submete. Com threads virtuais o limite faz o papel de semáforo; com
+ * threads de plataforma o pool já tem {@code limite} threads.
+ *
+ * Métricas com a tag {@code stage}: tarefas na fila ({@code executor.fila}), em execução
+ * ({@code executor.ativos}), limite ({@code executor.limite}), espera na fila
+ * ({@code executor.espera}) e duração de cada tarefa ({@code executor.tarefa}).
+ */
+public class ExecutorServiceWrapper implements Executor, AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(ExecutorServiceWrapper.class);
+
+    public enum Threads {
+        VIRTUAL, PLATFORM
+    }
+
+    private final String nome;
+    private final ExecutorService executor;
+    private final int limite;
+    private final Duration tempoLimite;
+    private final Queue<Tarefa> fila = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger tamanhoFila = new AtomicInteger();
+    private final AtomicInteger ativos = new AtomicInteger();
+    private final Timer espera;
+    private final Timer duracao;
+    private volatile boolean fechado;
+
+    public ExecutorServiceWrapper(String nome, ExecutorService executor, int limite, Duration tempoLimite,
+            MeterRegistry meterRegistry) {
+        if (limite < 1) {
+            throw new IllegalArgumentException("Limite do executor " + nome + " precisa ser positivo: " + limite);
+        }
+        this.nome = nome;
+        this.executor = executor;
+        this.limite = limite;
+        this.tempoLimite = tempoLimite;
+        Tags tags = Tags.of("stage", nome);
+        meterRegistry.gauge("executor.fila", tags, tamanhoFila);
+        meterRegistry.gauge("executor.ativos", tags, ativos);
+        meterRegistry.gauge("executor.limite", tags, this, ExecutorServiceWrapper::limite);
+        this.espera = Timer.builder("executor.espera").tags(tags).register(meterRegistry);
+        this.duracao = Timer.builder("executor.tarefa").tags(tags).register(meterRegistry);
+    }
+
+    /**
+     * Cria o executor da etapa {@code nome} com threads nomeadas {@code nome-N}.
+     */
+    public static ExecutorServiceWrapper criar(String nome, Threads threads, int limite, Duration tempoLimite,
+            MeterRegistry meterRegistry) {
+        ExecutorService executor = threads == Threads.VIRTUAL
+            ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(nome + "-", 0).factory())
+            : Executors.newFixedThreadPool(limite, Thread.ofPlatform().name(nome + "-", 0).daemon(true).factory());
+        return new ExecutorServiceWrapper(nome, executor, limite, tempoLimite, meterRegistry);
+    }
+
+    public void submit(Runnable task) {
+        execute(task);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (fechado) {
+            throw new RejectedExecutionException("Executor " + nome + " encerrado");
+        }
+        fila.add(new Tarefa(task, System.nanoTime()));
+        tamanhoFila.incrementAndGet();
+        drenar();
+    }
+
+    public int limite() {
+        return limite;
+    }
+
+    /**
+     * Inicia tarefas da fila enquanto houver vaga. Chamado ao submeter e ao fim de cada
+     * tarefa, para que uma tarefa enfileirada com o limite ocupado não fique esquecida.
+     */
+    private void drenar() {
+        while (!fila.isEmpty()) {
+            int atual = ativos.get();
+            if (atual >= limite) {
+                return;
+            }
+            if (!ativos.compareAndSet(atual, atual + 1)) {
+                continue;
+            }
+            Tarefa tarefa = fila.poll();
+            if (tarefa == null) {
+                ativos.decrementAndGet();
+                continue;
+            }
+            tamanhoFila.decrementAndGet();
+            try {
+                executor.execute(() -> rodar(tarefa));
+            } catch (RejectedExecutionException e) {
+                ativos.decrementAndGet();
+                LOG.warnf("Tarefa descartada pelo executor %s encerrado", nome);
+                return;
+            }
+        }
+    }
+
+    private void rodar(Tarefa tarefa) {
+        long inicio = System.nanoTime();
+        espera.record(inicio - tarefa.submetida(), TimeUnit.NANOSECONDS);
+        try {
+            tarefa.task().run();
+        } finally {
+            duracao.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+            ativos.decrementAndGet();
+            drenar();
+        }
+    }
+
+    /**
+     * Recusa novas tarefas, descarta as que ainda estão na fila e espera as em execução por
+     * até {@code tempoLimite}.
+     */
+    @Override
+    public void close() {
+        fechado = true;
+        int descartadas = 0;
+        while (fila.poll() != null) {
+            tamanhoFila.decrementAndGet();
+            descartadas++;
+        }
+        if (descartadas > 0) {
+            LOG.warnf("Executor %s encerrado com %d tarefas na fila", nome, descartadas);
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(tempoLimite.toMillis(), TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+
+    private record Tarefa(Runnable task, long submetida) {
+    }
+}
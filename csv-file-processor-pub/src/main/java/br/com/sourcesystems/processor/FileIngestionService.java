@@ -2,20 +2,58 @@ package br.com.sourcesystems.processor;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.runtime.configuration.MemorySize;
 import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import io.smallrye.mutiny.infrastructure.Infrastructure;
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
 
+/**
+ * Descobre os CSVs em {@code app.files.dir} e os processa com concorrência limitada.
+ *
+ * Arquivos até {@code ingestor.files.fast-lane.threshold} entram na fila rápida, que tem
+ * vagas próprias e não espera os arquivos grandes. A fila geral atende primeiro os menores
+ * arquivos e, quando está ociosa, também consome a fila rápida. O total de lotes em envio
+ * para o Kafka, somando todos os arquivos, é limitado por {@code ingestor.batches.max-in-flight}.
+ *
+ * O progresso de cada arquivo é registrado no {@link CheckpointStore} conforme os lotes são
+ * confirmados; na inicialização os arquivos interrompidos são retomados do último checkpoint.
+ *
+ * CSVs recebidos por upload ({@link #receber}) seguem o mesmo envio sem passar pelo disco,
+ * até {@code ingestor.upload.max-concurrent} ao mesmo tempo.
+ *
+ * Métricas: arquivos descobertos, concluídos e com falha, arquivos em fila e em processamento
+ * por fila ({@code fila=rapida|geral|upload}) e lotes em envio ou aguardando vaga.
+ */
 @ApplicationScoped
 public class FileIngestionService {
 
@@ -27,60 +65,332 @@ public class FileIngestionService {
     @ConfigProperty(name = "app.files.processed.dir")
     private String filesProcessedDir;
 
+    @ConfigProperty(name = "ingestor.files.max-concurrent", defaultValue = "2")
+    private int maxArquivos;
+
+    @ConfigProperty(name = "ingestor.files.fast-lane.max-concurrent", defaultValue = "2")
+    private int maxArquivosRapida;
+
+    @ConfigProperty(name = "ingestor.files.fast-lane.threshold", defaultValue = "64M")
+    private MemorySize limiteRapida;
+
+    @ConfigProperty(name = "ingestor.batches.max-in-flight", defaultValue = "8")
+    private int maxLotesEmVoo;
+
+    @ConfigProperty(name = "ingestor.upload.max-concurrent", defaultValue = "2")
+    private int maxUploads;
+
     private CsvFileProcessorBackPressure processor;
 
     private RegistroBatchSender sender;
 
-    public FileIngestionService(CsvFileProcessorBackPressure processor, RegistroBatchSender sender) {
+    private FileProgressRegistry progresso;
+
+    private FileReadiness readiness;
+
+    private CheckpointStore checkpoints;
+
+    private InFlightLimiter lotesEmVoo;
+
+    private final MeterRegistry meterRegistry;
+
+    private Counter descobertos;
+
+    private Counter concluidos;
+
+    private Counter falhas;
+
+    private final Map<String, Checkpoint> retomadas = new ConcurrentHashMap<>();
+
+    private final Deque<FileProgress> filaRapida = new ArrayDeque<>();
+
+    private final Queue<FileProgress> filaGeral = new PriorityQueue<>(Comparator.comparingLong(FileProgress::getTamanhoBytes));
+
+    private int ativosRapida;
+
+    private int ativosGeral;
+
+    private final AtomicInteger uploadsAtivos = new AtomicInteger();
+
+    public FileIngestionService(CsvFileProcessorBackPressure processor, RegistroBatchSender sender, FileProgressRegistry progresso,
+            FileReadiness readiness, CheckpointStore checkpoints, MeterRegistry meterRegistry) {
         this.processor = processor;
         this.sender = sender;
+        this.progresso = progresso;
+        this.readiness = readiness;
+        this.checkpoints = checkpoints;
+        this.meterRegistry = meterRegistry;
     }
 
+    @PostConstruct
+    void init() {
+        lotesEmVoo = new InFlightLimiter(maxLotesEmVoo);
 
+        descobertos = meterRegistry.counter("ingestor.files.descobertos");
+        concluidos = meterRegistry.counter("ingestor.files.concluidos");
+        falhas = meterRegistry.counter("ingestor.files.falhas");
+        for (FileProgress.Fila fila : FileProgress.Fila.values()) {
+            Tags tags = Tags.of("fila", fila.name().toLowerCase());
+            meterRegistry.gauge("ingestor.files.enfileirados", tags, this, s -> s.enfileirados(fila));
+            meterRegistry.gauge("ingestor.files.ativos", tags, this, s -> s.ativos(fila));
+        }
+        meterRegistry.gauge("ingestor.batches.em-voo", lotesEmVoo, InFlightLimiter::emUso);
+        meterRegistry.gauge("ingestor.batches.aguardando", lotesEmVoo, InFlightLimiter::aguardando);
+    }
 
+    /**
+     * Reenfileira os arquivos cujo processamento foi interrompido. Checkpoints de arquivos que
+     * não existem mais em {@code app.files.processed.dir}, ou que mudaram desde então, são descartados.
+     */
+    void retomarPendentes(@Observes StartupEvent ev) {
+        for (Checkpoint checkpoint : checkpoints.pendentes()) {
+            File file = Paths.get(filesProcessedDir, checkpoint.arquivo()).toFile();
+            if (!checkpoint.correspondeA(file)) {
+                LOG.warnf("Checkpoint de %s descartado: arquivo ausente ou alterado", checkpoint.arquivo());
+                checkpoints.remover(checkpoint.arquivo());
+                continue;
+            }
+            progresso.registrar(file.getAbsolutePath(), file.getName(), file.length()).ifPresent(p -> {
+                p.retomar(checkpoint.registro());
+                retomadas.put(p.getId(), checkpoint);
+                adicionar(p);
+                LOG.infof("Arquivo %s será retomado a partir do registro %d", file.getName(), checkpoint.registro());
+            });
+        }
+        despachar();
+    }
+
+    /**
+     * Varredura completa de {@code app.files.dir}: enfileira os CSVs prontos ainda não conhecidos
+     * e dispara o processamento conforme há vagas. No modo {@code watch} serve de reconciliação
+     * para eventos perdidos. Completa após a descoberta, sem esperar o processamento dos arquivos.
+     */
     public Uni<Void> processAllFiles() {
 
-        File dir = new File(filesDir);
-        if (!dir.exists() || !dir.isDirectory()) {
+        Path dir = Paths.get(filesDir);
+        if (!Files.isDirectory(dir)) {
             LOG.warn("Diretório de arquivos não encontrado: " + filesDir);
             return Uni.createFrom().voidItem();
         }
 
-        File[] files = dir.listFiles((d, name) -> name.toLowerCase().endsWith(".csv"));
-        if (files == null || files.length == 0) {
-            return Uni.createFrom().voidItem();
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(dir, p -> isCsv(p.getFileName().toString()))) {
+            for (Path arquivo : arquivos) {
+                if (readiness.esperaRestante(arquivo) == FileReadiness.PRONTO) {
+                    enfileirar(arquivo);
+                }
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            LOG.error("Erro ao listar o diretório " + filesDir, e);
         }
+        despachar();
+        return Uni.createFrom().voidItem();
+    }
 
-        return Multi.createFrom().items(files)
-            .onItem().transformToUniAndConcatenate(file -> {
-                Path origem = file.toPath();
-                Path destino = Paths.get(filesProcessedDir, file.getName());
+    /**
+     * Enfileira um arquivo já verificado como pronto e dispara o processamento.
+     */
+    public void submeter(Path arquivo) {
+        enfileirar(arquivo);
+        despachar();
+    }
+
+    /**
+     * Aceita {@code .csv} e os comprimidos {@code .csv.gz} e {@code .csv.zst}.
+     */
+    public static boolean isCsv(String nome) {
+        return CsvCompression.de(nome) != null;
+    }
+
+    private void enfileirar(Path arquivo) {
+        File file = arquivo.toFile();
+        long tamanho = file.length();
+        progresso.registrar(file.getAbsolutePath(), file.getName(), tamanho).ifPresent(p -> {
+            readiness.consumir(arquivo);
+            descobertos.increment();
+            adicionar(p);
+            LOG.infof("Arquivo %s (%d bytes) enfileirado", file.getName(), tamanho);
+        });
+    }
+
+    private synchronized void adicionar(FileProgress p) {
+        if (p.getTamanhoBytes() <= limiteRapida.asLongValue()) {
+            filaRapida.add(p);
+        } else {
+            filaGeral.add(p);
+        }
+    }
 
-                Uni<Void> uniMove = Uni.createFrom().voidItem()
+    private synchronized int enfileirados(FileProgress.Fila fila) {
+        return switch (fila) {
+            case RAPIDA -> filaRapida.size();
+            case GERAL -> filaGeral.size();
+            case UPLOAD -> 0;
+        };
+    }
+
+    private synchronized int ativos(FileProgress.Fila fila) {
+        return switch (fila) {
+            case RAPIDA -> ativosRapida;
+            case GERAL -> ativosGeral;
+            case UPLOAD -> uploadsAtivos.get();
+        };
+    }
+
+    private void despachar() {
+        List<FileProgress> iniciar = new ArrayList<>();
+        synchronized (this) {
+            while (ativosRapida < maxArquivosRapida && !filaRapida.isEmpty()) {
+                FileProgress p = filaRapida.poll();
+                p.iniciar(FileProgress.Fila.RAPIDA);
+                ativosRapida++;
+                iniciar.add(p);
+            }
+            while (ativosGeral < maxArquivos && (!filaGeral.isEmpty() || !filaRapida.isEmpty())) {
+                FileProgress p = filaGeral.isEmpty() ? filaRapida.poll() : filaGeral.poll();
+                p.iniciar(FileProgress.Fila.GERAL);
+                ativosGeral++;
+                iniciar.add(p);
+            }
+        }
+        for (FileProgress p : iniciar) {
+            processarArquivo(p)
+                .subscribe().with(
+                    ok -> finalizar(p, null),
+                    erro -> finalizar(p, erro));
+        }
+    }
+
+    private void finalizar(FileProgress p, Throwable erro) {
+        registrarFim(p, erro);
+        synchronized (this) {
+            if (p.getFila() == FileProgress.Fila.RAPIDA) {
+                ativosRapida--;
+            } else {
+                ativosGeral--;
+            }
+        }
+        despachar();
+    }
+
+    private void registrarFim(FileProgress p, Throwable erro) {
+        if (erro == null) {
+            concluidos.increment();
+            p.concluir();
+            LOG.infof("Arquivo %s processado: %d registros em %d lotes", p.getArquivo(), p.getRegistrosEnviados(), p.getLotesEnviados());
+        } else {
+            falhas.increment();
+            p.falhar(erro);
+            LOG.error("Erro no processamento do arquivo " + p.getArquivo(), erro);
+        }
+        progresso.finalizado(p);
+    }
+
+    private Uni<Void> processarArquivo(FileProgress p) {
+        Checkpoint retomada = retomadas.remove(p.getId());
+        Path origem = Paths.get(p.getCaminho());
+        Path destino = Paths.get(filesProcessedDir, p.getArquivo());
+
+        if (retomada != null) {
+            return enviar(p, destino.toFile(), retomada, checkpoints.retomar(retomada));
+        }
+
+        Uni<Void> uniMove = Uni.createFrom().voidItem()
+            .invoke(() -> {
+                try {
+                    Files.createDirectories(destino.getParent());
+                    Files.move(origem, destino, StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    LOG.error("Erro ao mover arquivo", e);
+                }
+                LOG.info("Arquivo movido para: " + destino.toAbsolutePath());
+            });
+
+        return uniMove
+            .map(ignored -> checkpoints.iniciar(destino.toFile()))
+            .chain(sessao -> enviar(p, destino.toFile(), null, sessao));
+    }
+
+    /**
+     * Envia os lotes do arquivo sem esperar a confirmação do anterior: até
+     * {@code ingestor.batches.max-in-flight} lotes do arquivo ficam aguardando o broker ao
+     * mesmo tempo. O checkpoint avança pela ordem do arquivo via {@link CheckpointTracker}.
+     */
+    private Uni<Void> enviar(FileProgress p, File file, Checkpoint retomada, CheckpointStore.Sessao sessao) {
+        return enviarLotes(p, processor.lerArquivo(file, retomada), new CheckpointTracker(sessao))
+            .invoke(sessao::concluir)
+            .onFailure().invoke(erro -> sessao.interromper());
+    }
+
+    /**
+     * Envia os lotes lidos; com {@code tracker}, o checkpoint acompanha as confirmações.
+     */
+    private Uni<Void> enviarLotes(FileProgress p, Multi<LoteArquivo> lotes, CheckpointTracker tracker) {
+        return lotes
+            .onItem()
+            .transformToUni(lote -> {
+                long sequencia = tracker == null ? -1 : tracker.registrar();
+                LoteOrigem origem = LoteOrigem.de(p, lote, LoteHeaders.agoraMicros());
+                return lotesEmVoo.comPermissao(() -> sender.processarArquivo(Uni.createFrom().item(lote.registros()), origem))
                     .invoke(() -> {
-                        try {
-                            Files.createDirectories(destino.getParent());
-                            Files.move(origem, destino, StandardCopyOption.REPLACE_EXISTING);
-                        } catch (IOException e) {
-                            LOG.error("Erro ao mover arquivo", e);
+                        p.loteEnviado(lote.registros().size());
+                        if (tracker != null) {
+                            tracker.confirmar(sequencia, lote);
                         }
-                        LOG.info("Arquivo movido para: " + destino.toAbsolutePath());
                     });
-
-                Multi<List<Registro>> loteUni = processor.processFile(destino.toFile());
-                Uni<Void> processamentoCompleto = loteUni   
-                                                        .onItem()
-                                                        .transformToUniAndConcatenate(lote -> sender.processarArquivo(Uni.createFrom().item(lote))) // Multi<Void>
-                                                        .runSubscriptionOn(Infrastructure.getDefaultExecutor())
-                                                        .collect()
-                                                        .asList()   // Uni<List<Void>>
-                                                        .replaceWithVoid();
-
-                return uniMove.chain(() -> processamentoCompleto);
             })
-            .onFailure().invoke(t -> LOG.error("Erro no processamento de arquivos", t))
-            .collect().asList()
+            .merge(maxLotesEmVoo)
+            .runSubscriptionOn(Infrastructure.getDefaultExecutor())
+            .collect()
+            .last()
             .replaceWithVoid();
     }
 
-}
\ No newline at end of file
+    /**
+     * Ingere um CSV recebido como stream, sem gravá-lo em disco. O corpo é lido pelo
+     * {@link CsvFileProcessorBackPressure#lerStream} só conforme os lotes anteriores são
+     * entregues ao Kafka, dentro do mesmo {@code ingestor.batches.max-in-flight} dos arquivos;
+     * enquanto isso quem envia fica esperando, e a memória usada pelo upload não passa desses
+     * lotes. Não há checkpoint: um upload interrompido precisa ser enviado de novo.
+     *
+     * O {@code Uni} devolvido completa com o progresso assim que o corpo foi lido por inteiro
+     * ou o processamento terminou; os últimos lotes podem ainda estar aguardando o broker, e o
+     * resultado final fica no {@link FileProgressRegistry}. Falha com
+     * {@link UploadsEsgotadosException} quando já há {@code ingestor.upload.max-concurrent}
+     * uploads em andamento.
+     */
+    public Uni<FileProgress> receber(String nome, InputStream corpo, long tamanhoBytes) {
+        if (uploadsAtivos.incrementAndGet() > maxUploads) {
+            uploadsAtivos.decrementAndGet();
+            return Uni.createFrom().failure(new UploadsEsgotadosException(maxUploads));
+        }
+        FileProgress p = progresso.registrar("upload:" + UUID.randomUUID(), nome, tamanhoBytes).orElseThrow();
+        descobertos.increment();
+        p.iniciar(FileProgress.Fila.UPLOAD);
+        LOG.infof("Upload %s (%s) iniciado", p.getId(), nome);
+
+        CompletableFuture<FileProgress> lido = new CompletableFuture<>();
+        Multi<LoteArquivo> lotes = processor.lerStream(nome, corpo)
+            .onCompletion().invoke(() -> lido.complete(p));
+        enviarLotes(p, lotes, null)
+            .subscribe().with(
+                ok -> finalizarUpload(p, null, lido),
+                erro -> finalizarUpload(p, erro, lido));
+        return Uni.createFrom().completionStage(lido);
+    }
+
+    private void finalizarUpload(FileProgress p, Throwable erro, CompletableFuture<FileProgress> lido) {
+        registrarFim(p, erro);
+        uploadsAtivos.decrementAndGet();
+        lido.complete(p);
+    }
+
+    /**
+     * Recusa de upload por já haver {@code ingestor.upload.max-concurrent} em andamento.
+     */
+    public static class UploadsEsgotadosException extends RuntimeException {
+
+        UploadsEsgotadosException(int limite) {
+            super("Limite de " + limite + " uploads simultâneos atingido");
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package br.com.sourcesystems.processor;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+/**
+ * Andamento de um arquivo na ingestão, exposto em {@code /ingestao/arquivos}.
+ */
+@RegisterForReflection
+public class FileProgress {
+
+    public enum Status {
+        QUEUED, ACTIVE, DONE, FAILED
+    }
+
+    public enum Fila {
+        RAPIDA, GERAL, UPLOAD
+    }
+
+    private final String id;
+    private final String caminho;
+    private final String arquivo;
+    private final long tamanhoBytes;
+    private final Instant descobertoEm;
+    private final AtomicLong lotesEnviados = new AtomicLong();
+    private final AtomicLong registrosEnviados = new AtomicLong();
+    private volatile long registroInicial;
+    private volatile Status status = Status.QUEUED;
+    private volatile Fila fila;
+    private volatile Instant inicioEm;
+    private volatile Instant fimEm;
+    private volatile String erro;
+
+    public FileProgress(String id, String caminho, String arquivo, long tamanhoBytes) {
+        this.id = id;
+        this.caminho = caminho;
+        this.arquivo = arquivo;
+        this.tamanhoBytes = tamanhoBytes;
+        this.descobertoEm = Instant.now();
+    }
+
+    void retomar(long registro) {
+        this.registroInicial = registro;
+    }
+
+    void iniciar(Fila fila) {
+        this.fila = fila;
+        this.inicioEm = Instant.now();
+        this.status = Status.ACTIVE;
+    }
+
+    void loteEnviado(int registros) {
+        lotesEnviados.incrementAndGet();
+        registrosEnviados.addAndGet(registros);
+    }
+
+    void concluir() {
+        this.fimEm = Instant.now();
+        this.status = Status.DONE;
+    }
+
+    void falhar(Throwable t) {
+        this.fimEm = Instant.now();
+        this.erro = t.getMessage();
+        this.status = Status.FAILED;
+    }
+
+    public boolean isFinalizado() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getCaminho() {
+        return caminho;
+    }
+
+    public String getArquivo() {
+        return arquivo;
+    }
+
+    public long getTamanhoBytes() {
+        return tamanhoBytes;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Fila getFila() {
+        return fila;
+    }
+
+    /**
+     * Registros já confirmados antes desta execução, quando o arquivo foi retomado de um checkpoint.
+     */
+    public long getRegistroInicial() {
+        return registroInicial;
+    }
+
+    public long getLotesEnviados() {
+        return lotesEnviados.get();
+    }
+
+    public long getRegistrosEnviados() {
+        return registrosEnviados.get();
+    }
+
+    public Instant getDescobertoEm() {
+        return descobertoEm;
+    }
+
+    public Instant getInicioEm() {
+        return inicioEm;
+    }
+
+    public Instant getFimEm() {
+        return fimEm;
+    }
+
+    public String getErro() {
+        return erro;
+    }
+}
@@ -0,0 +1,73 @@
+package br.com.sourcesystems.processor;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Registro em memória do andamento dos arquivos descobertos, indexado pelo caminho do arquivo.
+ * Mantém todos os arquivos em fila ou em processamento e os últimos
+ * {@code ingestor.progress.history} finalizados.
+ */
+@ApplicationScoped
+public class FileProgressRegistry {
+
+    @ConfigProperty(name = "ingestor.progress.history", defaultValue = "1000")
+    private int historico;
+
+    private final Map<String, FileProgress> arquivos = new ConcurrentHashMap<>();
+
+    private final Queue<FileProgress> finalizados = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Registra o arquivo para processamento. Retorna vazio se ele já estiver em fila ou ativo.
+     */
+    public Optional<FileProgress> registrar(String caminho, String arquivo, long tamanhoBytes) {
+        FileProgress novo = new FileProgress(UUID.randomUUID().toString(), caminho, arquivo, tamanhoBytes);
+        FileProgress resultado = arquivos.compute(caminho,
+            (chave, atual) -> atual == null || atual.isFinalizado() ? novo : atual);
+        return resultado == novo ? Optional.of(novo) : Optional.empty();
+    }
+
+    public void finalizado(FileProgress progresso) {
+        finalizados.add(progresso);
+        while (finalizados.size() > historico) {
+            FileProgress antigo = finalizados.poll();
+            if (antigo != null) {
+                arquivos.remove(antigo.getCaminho(), antigo);
+            }
+        }
+    }
+
+    public Optional<FileProgress> buscar(String id) {
+        return arquivos.values().stream()
+            .filter(p -> p.getId().equals(id))
+            .findFirst();
+    }
+
+    public List<FileProgress> listar() {
+        return arquivos.values().stream()
+            .sorted(Comparator.comparing(FileProgress::getDescobertoEm))
+            .toList();
+    }
+
+    public List<FileProgress> listar(FileProgress.Status status) {
+        return arquivos.values().stream()
+            .filter(p -> p.getStatus() == status)
+            .sorted(Comparator.comparing(FileProgress::getDescobertoEm))
+            .toList();
+    }
+
+    public long contar(FileProgress.Status status) {
+        return arquivos.values().stream().filter(p -> p.getStatus() == status).count();
+    }
+}
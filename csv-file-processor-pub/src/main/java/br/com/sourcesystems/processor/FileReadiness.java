@@ -0,0 +1,95 @@
+package br.com.sourcesystems.processor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Decide se um CSV já foi escrito por completo, conforme {@code ingestor.discovery.completion}:
+ * <ul>
+ * <li>{@code stable}: sem modificação há pelo menos {@code ingestor.discovery.stable-time};</li>
+ * <li>{@code rename}: o produtor grava com outra extensão e renomeia para {@code .csv} (ou
+ * {@code .csv.gz}, {@code .csv.zst}) ao final;</li>
+ * <li>{@code marker}: existe o arquivo marcador {@code <arquivo><ingestor.discovery.marker-suffix>}.</li>
+ * </ul>
+ */
+@ApplicationScoped
+public class FileReadiness {
+
+    private static final Logger LOG = Logger.getLogger(FileReadiness.class);
+
+    public static final long PRONTO = 0;
+    public static final long IGNORAR = -1;
+
+    @ConfigProperty(name = "ingestor.discovery.completion", defaultValue = "stable")
+    private String completion;
+
+    @ConfigProperty(name = "ingestor.discovery.stable-time", defaultValue = "500ms")
+    private Duration stableTime;
+
+    @ConfigProperty(name = "ingestor.discovery.marker-suffix", defaultValue = ".ok")
+    private String markerSuffix;
+
+    /**
+     * Retorna {@link #PRONTO}, {@link #IGNORAR} (arquivo inexistente ou sem marcador) ou quantos
+     * milissegundos esperar antes de verificar de novo.
+     */
+    public long esperaRestante(Path arquivo) {
+        BasicFileAttributes atributos;
+        try {
+            atributos = Files.readAttributes(arquivo, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return IGNORAR;
+        }
+        if (!atributos.isRegularFile()) {
+            return IGNORAR;
+        }
+        switch (completion) {
+            case "rename":
+                return PRONTO;
+            case "marker":
+                return Files.exists(marcador(arquivo)) ? PRONTO : IGNORAR;
+            default:
+                long desde = System.currentTimeMillis() - atributos.lastModifiedTime().toMillis();
+                long falta = stableTime.toMillis() - desde;
+                return falta <= 0 ? PRONTO : falta;
+        }
+    }
+
+    public boolean isMarcador(Path arquivo) {
+        return "marker".equals(completion) && arquivo.getFileName().toString().endsWith(markerSuffix);
+    }
+
+    /**
+     * Para um marcador, retorna o CSV correspondente.
+     */
+    public Path arquivoDoMarcador(Path marcador) {
+        String nome = marcador.getFileName().toString();
+        return marcador.resolveSibling(nome.substring(0, nome.length() - markerSuffix.length()));
+    }
+
+    /**
+     * Remove o marcador depois que o arquivo foi aceito para processamento.
+     */
+    public void consumir(Path arquivo) {
+        if (!"marker".equals(completion)) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(marcador(arquivo));
+        } catch (IOException e) {
+            LOG.warn("Não foi possível remover o marcador de " + arquivo, e);
+        }
+    }
+
+    private Path marcador(Path arquivo) {
+        return arquivo.resolveSibling(arquivo.getFileName().toString() + markerSuffix);
+    }
+}
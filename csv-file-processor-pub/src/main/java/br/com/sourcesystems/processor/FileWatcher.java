@@ -0,0 +1,151 @@
+package br.com.sourcesystems.processor;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+
+/**
+ * Descoberta de arquivos por eventos do sistema de arquivos quando
+ * {@code ingestor.discovery.mode=watch}. Arquivos ainda em escrita são verificados de novo
+ * até ficarem prontos; a varredura do {@link FileIngestionScheduler} continua como
+ * reconciliação para eventos perdidos ({@code OVERFLOW}).
+ */
+@ApplicationScoped
+public class FileWatcher {
+
+    private static final Logger LOG = Logger.getLogger(FileWatcher.class);
+
+    @ConfigProperty(name = "app.files.dir")
+    private String filesDir;
+
+    @ConfigProperty(name = "ingestor.discovery.mode", defaultValue = "watch")
+    private String mode;
+
+    private final FileIngestionService ingestionService;
+
+    private final FileReadiness readiness;
+
+    private final Set<Path> pendentes = ConcurrentHashMap.newKeySet();
+
+    private WatchService watchService;
+
+    private ScheduledExecutorService reverificacao;
+
+    public FileWatcher(FileIngestionService ingestionService, FileReadiness readiness) {
+        this.ingestionService = ingestionService;
+        this.readiness = readiness;
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        if (!"watch".equalsIgnoreCase(mode)) {
+            LOG.info("Descoberta de arquivos por varredura periódica");
+            return;
+        }
+        Path dir = Paths.get(filesDir);
+        try {
+            Files.createDirectories(dir);
+            watchService = dir.getFileSystem().newWatchService();
+            dir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            LOG.error("Não foi possível observar " + filesDir + ", mantendo apenas a varredura periódica", e);
+            return;
+        }
+        reverificacao = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "file-watcher-recheck");
+            t.setDaemon(true);
+            return t;
+        });
+        Thread thread = new Thread(() -> observar(dir), "file-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        LOG.infof("Observando %s", dir.toAbsolutePath());
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        if (reverificacao != null) {
+            reverificacao.shutdownNow();
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOG.warn("Erro ao encerrar o observador de arquivos", e);
+            }
+        }
+    }
+
+    private void observar(Path dir) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        LOG.warn("Eventos de arquivo perdidos, executando varredura de reconciliação");
+                        ingestionService.processAllFiles().subscribe().with(
+                            ok -> { },
+                            erro -> LOG.error("Erro na varredura de reconciliação", erro));
+                        continue;
+                    }
+                    Path nome = (Path) event.context();
+                    Path arquivo = dir.resolve(nome);
+                    if (readiness.isMarcador(arquivo)) {
+                        arquivo = readiness.arquivoDoMarcador(arquivo);
+                    }
+                    if (FileIngestionService.isCsv(arquivo.getFileName().toString())) {
+                        try {
+                            verificar(arquivo);
+                        } catch (RuntimeException e) {
+                            LOG.error("Erro ao submeter o arquivo " + arquivo, e);
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    LOG.error("Diretório " + dir + " deixou de ser observável, mantendo apenas a varredura periódica");
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            LOG.debug("Observador de arquivos encerrado");
+        }
+    }
+
+    private void verificar(Path arquivo) {
+        long espera = readiness.esperaRestante(arquivo);
+        if (espera == FileReadiness.PRONTO) {
+            pendentes.remove(arquivo);
+            ingestionService.submeter(arquivo);
+        } else if (espera > 0 && pendentes.add(arquivo)) {
+            reverificacao.schedule(() -> {
+                pendentes.remove(arquivo);
+                try {
+                    verificar(arquivo);
+                } catch (RuntimeException e) {
+                    LOG.error("Erro ao submeter o arquivo " + arquivo, e);
+                }
+            }, espera, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package br.com.sourcesystems.processor;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.subscription.UniEmitter;
+
+/**
+ * Semáforo não bloqueante: {@link #comPermissao} executa a ação quando há permissão livre e
+ * a devolve ao final.
+ *
+ * Cada execução tem uma {@link Permissao} que passa uma única vez de aguardando para concedida
+ * e de concedida ou aguardando para encerrada. Assim um cancelamento em qualquer ponto, inclusive
+ * entre a concessão e o início da ação, devolve a permissão exatamente uma vez, e uma permissão
+ * concedida a uma espera já cancelada passa para a próxima.
+ */
+public class InFlightLimiter {
+
+    private final int limite;
+    private final Deque<Permissao> espera = new ArrayDeque<>();
+    private int emUso;
+
+    public InFlightLimiter(int limite) {
+        if (limite < 1) {
+            throw new IllegalArgumentException("Limite precisa ser positivo: " + limite);
+        }
+        this.limite = limite;
+    }
+
+    /**
+     * Executa {@code acao} somente depois de obter uma permissão e a devolve ao final,
+     * inclusive em falha ou cancelamento.
+     */
+    public <T> Uni<T> comPermissao(Supplier<Uni<? extends T>> acao) {
+        return Uni.createFrom().deferred(() -> {
+            Permissao permissao = new Permissao();
+            return acquire(permissao)
+                .onItem().transformToUni(ignorado -> Uni.createFrom().<T>deferred(acao))
+                .onTermination().invoke(() -> encerrar(permissao));
+        });
+    }
+
+    public synchronized int emUso() {
+        return emUso;
+    }
+
+    public synchronized int aguardando() {
+        return espera.size();
+    }
+
+    public int limite() {
+        return limite;
+    }
+
+    private Uni<Void> acquire(Permissao permissao) {
+        return Uni.createFrom().emitter(emitter -> {
+            boolean livre;
+            synchronized (this) {
+                permissao.emitter = emitter;
+                livre = emUso < limite;
+                if (livre) {
+                    emUso++;
+                } else {
+                    espera.add(permissao);
+                }
+            }
+            if (livre) {
+                conceder(permissao);
+            }
+        });
+    }
+
+    /**
+     * Entrega a permissão já contada em {@code emUso}; se a execução foi encerrada antes,
+     * a permissão volta ao semáforo.
+     */
+    private void conceder(Permissao permissao) {
+        if (!entregar(permissao)) {
+            release();
+        }
+    }
+
+    private static boolean entregar(Permissao permissao) {
+        if (!permissao.estado.compareAndSet(Permissao.AGUARDANDO, Permissao.CONCEDIDA)) {
+            return false;
+        }
+        permissao.emitter.complete(null);
+        return true;
+    }
+
+    private void encerrar(Permissao permissao) {
+        int anterior = permissao.estado.getAndSet(Permissao.ENCERRADA);
+        if (anterior == Permissao.CONCEDIDA) {
+            release();
+        } else if (anterior == Permissao.AGUARDANDO) {
+            synchronized (this) {
+                espera.remove(permissao);
+            }
+        }
+    }
+
+    /**
+     * Passa a permissão para a próxima espera ainda ativa ou, sem nenhuma, a devolve.
+     */
+    private void release() {
+        while (true) {
+            Permissao proxima;
+            synchronized (this) {
+                proxima = espera.poll();
+                if (proxima == null) {
+                    emUso--;
+                    return;
+                }
+            }
+            if (entregar(proxima)) {
+                return;
+            }
+        }
+    }
+
+    private static final class Permissao {
+        static final int AGUARDANDO = 0;
+        static final int CONCEDIDA = 1;
+        static final int ENCERRADA = 2;
+
+        final AtomicInteger estado = new AtomicInteger(AGUARDANDO);
+        UniEmitter<? super Void> emitter;
+    }
+}
@@ -0,0 +1,11 @@
+package br.com.sourcesystems.processor;
+
+import java.util.List;
+
+/**
+ * Lote lido de um arquivo com a posição de retomada logo após o seu último registro:
+ * quantidade de registros lidos desde o início do arquivo e offset em bytes (-1 quando
+ * o leitor não acompanha posições).
+ */
+public record LoteArquivo(List<Registro> registros, long registroFinal, long offsetFinal) {
+}
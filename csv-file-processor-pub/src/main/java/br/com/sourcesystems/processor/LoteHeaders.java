@@ -0,0 +1,58 @@
+package br.com.sourcesystems.processor;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * Headers Kafka que acompanham cada mensagem de um lote lido de arquivo, lidos pelo sub para
+ * medir a latência por etapa. Os valores são texto UTF-8, para aparecerem legíveis nas
+ * ferramentas do Kafka. O contexto de trace vai no header {@code traceparent} do W3C, escrito
+ * pelo propagador do OpenTelemetry.
+ *
+ * Os instantes são microssegundos desde a epoch medidos por {@link #agoraMicros()}: um relógio
+ * monotônico ancorado na hora do sistema na carga da classe, que não volta com ajustes de NTP.
+ * Entre pub e sub a diferença inclui o desvio entre os relógios das máquinas.
+ */
+public final class LoteHeaders {
+
+    /** Id do arquivo de origem no {@link FileProgressRegistry}. */
+    public static final String ARQUIVO_ID = "x-arquivo-id";
+
+    public static final String ARQUIVO_NOME = "x-arquivo-nome";
+
+    /** Número (a partir de 1, sem o cabeçalho) do primeiro registro da mensagem no arquivo. */
+    public static final String REGISTRO_INICIAL = "x-registro-inicial";
+
+    /** Número do último registro da mensagem no arquivo. */
+    public static final String REGISTRO_FINAL = "x-registro-final";
+
+    /**
+     * Registros na mensagem; menor que a faixa inicial-final quando o lote foi roteado por
+     * chave e as linhas da parte não são contíguas.
+     */
+    public static final String REGISTROS = "x-registros";
+
+    /** Instante em que o lote saiu da leitura do arquivo. */
+    public static final String INGESTAO_US = "x-ingestao-us";
+
+    /** Instante em que a mensagem foi entregue ao produtor Kafka. */
+    public static final String ENVIO_US = "x-envio-us";
+
+    private static final long BASE_MICROS = ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+
+    private static final long BASE_NANOS = System.nanoTime();
+
+    private LoteHeaders() {
+    }
+
+    public static long agoraMicros() {
+        return BASE_MICROS + (System.nanoTime() - BASE_NANOS) / 1000;
+    }
+
+    static void adicionar(Headers headers, String nome, Object valor) {
+        headers.add(nome, String.valueOf(valor).getBytes(StandardCharsets.UTF_8));
+    }
+}
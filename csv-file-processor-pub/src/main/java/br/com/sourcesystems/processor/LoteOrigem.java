@@ -0,0 +1,26 @@
+package br.com.sourcesystems.processor;
+
+/**
+ * Origem de um lote lido de arquivo, enviada nos {@link LoteHeaders} de cada mensagem do lote.
+ * Quando o lote é dividido por partição, cada parte leva a sua própria origem ({@link #parte}):
+ * o primeiro e o último registro dela e quantos são. Com roteamento por chave as linhas de uma
+ * parte não são contíguas, então {@code registros} pode ser menor que a faixa.
+ */
+public record LoteOrigem(String arquivoId, String arquivo, long registroInicial, long registroFinal, int registros,
+        long ingestaoMicros) {
+
+    static LoteOrigem de(FileProgress progresso, LoteArquivo lote, long ingestaoMicros) {
+        int registros = lote.registros().size();
+        return new LoteOrigem(progresso.getId(), progresso.getArquivo(),
+            lote.registroFinal() - registros + 1, lote.registroFinal(), registros, ingestaoMicros);
+    }
+
+    /**
+     * Origem da parte do lote entre as posições {@code primeira} e {@code ultima} (a partir de
+     * zero, inclusive), com {@code registros} registros.
+     */
+    LoteOrigem parte(int primeira, int ultima, int registros) {
+        return new LoteOrigem(arquivoId, arquivo, registroInicial + primeira, registroInicial + ultima, registros,
+            ingestaoMicros);
+    }
+}
@@ -0,0 +1,252 @@
+package br.com.sourcesystems.processor;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.utils.Utils;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.reactive.messaging.kafka.KafkaClientService;
+import io.smallrye.reactive.messaging.kafka.KafkaProducer;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+
+/**
+ * Distribui os registros de um lote entre as partições do tópico {@code registros-csv} pelo
+ * hash de um campo ({@code ingestor.routing.key-field}, CPF por padrão). Usa o mesmo murmur2
+ * do particionador padrão do Kafka, então um mesmo valor sempre cai na mesma partição e o
+ * consumidor dela pode manter cache e deduplicação por chave sem coordenação.
+ *
+ * A quantidade de partições é consultada no broker na inicialização; se não for possível,
+ * vale {@code ingestor.routing.partitions}.
+ */
+@ApplicationScoped
+public class PartitionRouter {
+
+    private static final Logger LOG = Logger.getLogger(PartitionRouter.class);
+
+    private static final String CANAL = "registros-csv";
+
+    @ConfigProperty(name = "ingestor.routing.enabled", defaultValue = "true")
+    private boolean habilitado;
+
+    @ConfigProperty(name = "ingestor.routing.key-field", defaultValue = "cpf")
+    private String campo;
+
+    @ConfigProperty(name = "ingestor.routing.partitions", defaultValue = "6")
+    private int particoesPadrao;
+
+    @ConfigProperty(name = "mp.messaging.outgoing.registros-csv.topic", defaultValue = "registros-csv")
+    private String topico;
+
+    private final KafkaClientService kafkaClientService;
+
+    private final AtomicInteger semChave = new AtomicInteger();
+
+    private Function<Registro, String> chave;
+
+    private int indiceCampo;
+
+    private volatile int particoes;
+
+    public PartitionRouter(KafkaClientService kafkaClientService) {
+        this.kafkaClientService = kafkaClientService;
+    }
+
+    @PostConstruct
+    void init() {
+        chave = extrator(campo);
+        indiceCampo = indice(campo);
+        particoes = Math.max(1, particoesPadrao);
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        if (!habilitado) {
+            LOG.info("Roteamento por chave desabilitado, partição escolhida pelo produtor");
+            return;
+        }
+        try {
+            KafkaProducer<?, ?> producer = kafkaClientService.getProducer(CANAL);
+            if (producer == null) {
+                LOG.warnf("Produtor do canal %s indisponível, usando %d partições", CANAL, particoes);
+                return;
+            }
+            List<PartitionInfo> info = producer.partitionsFor(topico).await().atMost(Duration.ofSeconds(10));
+            if (info != null && !info.isEmpty()) {
+                particoes = info.size();
+            }
+            LOG.infof("Roteamento por %s em %d partições do tópico %s", campo, particoes, topico);
+        } catch (RuntimeException e) {
+            LOG.warnf(e, "Não foi possível consultar as partições de %s, usando %d", topico, particoes);
+        }
+    }
+
+    public boolean isHabilitado() {
+        return habilitado;
+    }
+
+    public int getParticoes() {
+        return particoes;
+    }
+
+    /**
+     * Agrupa o lote por partição de destino, em ordem de partição, preservando a ordem dos
+     * registros em cada grupo. Registros sem valor no campo de roteamento são distribuídos em
+     * rodízio.
+     */
+    public List<Parte> rotear(List<Registro> lote) {
+        if (lote instanceof RegistroBatch colunas) {
+            return rotear(colunas);
+        }
+        int total = particoes;
+        List<List<Registro>> grupos = new ArrayList<>(total);
+        int[] primeiras = new int[total];
+        int[] ultimas = new int[total];
+        int esperado = lote.size() / total + 1;
+        for (int particao = 0; particao < total; particao++) {
+            grupos.add(null);
+        }
+        for (int linha = 0; linha < lote.size(); linha++) {
+            int particao = particao(chave.apply(lote.get(linha)), total);
+            List<Registro> grupo = grupos.get(particao);
+            if (grupo == null) {
+                grupo = new ArrayList<>(esperado);
+                grupos.set(particao, grupo);
+                primeiras[particao] = linha;
+            }
+            grupo.add(lote.get(linha));
+            ultimas[particao] = linha;
+        }
+        List<Parte> partes = new ArrayList<>();
+        for (int particao = 0; particao < total; particao++) {
+            if (grupos.get(particao) != null) {
+                partes.add(new Parte(particao, grupos.get(particao), primeiras[particao], ultimas[particao]));
+            }
+        }
+        return partes;
+    }
+
+    /**
+     * Roteamento de um lote em colunas: o hash é calculado direto sobre os bytes UTF-8 da célula
+     * no lote, iguais aos de {@code valor.getBytes(UTF_8)}, e cada grupo vira um novo lote com cópia só
+     * dos bytes das suas linhas.
+     */
+    private List<Parte> rotear(RegistroBatch lote) {
+        int total = particoes;
+        int[] destinos = new int[lote.size()];
+        int[] contagens = new int[total];
+        byte[] dados = lote.dados();
+        for (int linha = 0; linha < destinos.length; linha++) {
+            int tamanho = lote.tamanho(linha, indiceCampo);
+            int particao;
+            if (tamanho <= 0) {
+                particao = Utils.toPositive(semChave.getAndIncrement()) % total;
+            } else {
+                int inicio = lote.inicio(linha, indiceCampo);
+                particao = Utils.toPositive(murmur2(dados, inicio, tamanho)) % total;
+            }
+            destinos[linha] = particao;
+            contagens[particao]++;
+        }
+        List<Parte> grupos = new ArrayList<>();
+        for (int particao = 0; particao < total; particao++) {
+            if (contagens[particao] == 0) {
+                continue;
+            }
+            if (contagens[particao] == destinos.length) {
+                grupos.add(new Parte(particao, lote, 0, destinos.length - 1));
+                break;
+            }
+            int[] linhas = new int[contagens[particao]];
+            int n = 0;
+            for (int linha = 0; linha < destinos.length; linha++) {
+                if (destinos[linha] == particao) {
+                    linhas[n++] = linha;
+                }
+            }
+            grupos.add(new Parte(particao, lote.selecionar(linhas, n), linhas[0], linhas[n - 1]));
+        }
+        return grupos;
+    }
+
+    /**
+     * Registros de um lote destinados a {@code particao}; {@code primeira} e {@code ultima} são
+     * as posições (a partir de zero) do primeiro e do último deles no lote original. Com
+     * {@code particao} negativa a escolha fica com o produtor.
+     */
+    public record Parte(int particao, List<Registro> registros, int primeira, int ultima) {
+    }
+
+    int particao(String valor, int total) {
+        if (valor == null || valor.isEmpty()) {
+            return Utils.toPositive(semChave.getAndIncrement()) % total;
+        }
+        return Utils.toPositive(Utils.murmur2(valor.getBytes(StandardCharsets.UTF_8))) % total;
+    }
+
+    /**
+     * {@code Utils.murmur2} do Kafka sobre {@code tamanho} bytes a partir de {@code inicio}, sem
+     * copiar a faixa; mesmo resultado de {@code Utils.murmur2} sobre a cópia.
+     */
+    static int murmur2(byte[] dados, int inicio, int tamanho) {
+        final int m = 0x5bd1e995;
+        final int r = 24;
+        int h = 0x9747b28c ^ tamanho;
+        int fim4 = inicio + (tamanho & ~3);
+        for (int i = inicio; i < fim4; i += 4) {
+            int k = (dados[i] & 0xff) + ((dados[i + 1] & 0xff) << 8) + ((dados[i + 2] & 0xff) << 16)
+                + ((dados[i + 3] & 0xff) << 24);
+            k *= m;
+            k ^= k >>> r;
+            k *= m;
+            h *= m;
+            h ^= k;
+        }
+        switch (tamanho & 3) {
+            case 3:
+                h ^= (dados[fim4 + 2] & 0xff) << 16;
+                // continua
+            case 2:
+                h ^= (dados[fim4 + 1] & 0xff) << 8;
+                // continua
+            case 1:
+                h ^= dados[fim4] & 0xff;
+                h *= m;
+                break;
+            default:
+                break;
+        }
+        h ^= h >>> 13;
+        h *= m;
+        h ^= h >>> 15;
+        return h;
+    }
+
+    private static int indice(String campo) {
+        return switch (campo.toLowerCase()) {
+            case "cpf" -> RegistroBatch.CPF;
+            case "email" -> RegistroBatch.EMAIL;
+            case "telefone" -> RegistroBatch.TELEFONE;
+            case "nome" -> RegistroBatch.NOME;
+            default -> throw new IllegalArgumentException("Campo de roteamento desconhecido: " + campo);
+        };
+    }
+
+    private static Function<Registro, String> extrator(String campo) {
+        return switch (campo.toLowerCase()) {
+            case "cpf" -> Registro::cpf;
+            case "email" -> Registro::email;
+            case "telefone" -> Registro::telefone;
+            case "nome" -> Registro::nome;
+            default -> throw new IllegalArgumentException("Campo de roteamento desconhecido: " + campo);
+        };
+    }
+}
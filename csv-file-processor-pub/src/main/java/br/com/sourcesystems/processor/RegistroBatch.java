@@ -0,0 +1,254 @@
+package br.com.sourcesystems.processor;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Lote de registros em colunas: os campos de texto de todas as linhas ficam em UTF-8 em um
+ * único {@code byte[]}, com início e tamanho de cada célula em dois {@code int[]} (tamanho -1
+ * para null), e {@code dataLeitura} é uma só para o lote. Por linha são 32 bytes de índices
+ * mais os bytes dos campos, contra um {@link Registro}, quatro Strings e um
+ * {@link LocalDateTime} por linha em um {@code List<Registro>}.
+ *
+ * É um {@code List<Registro>} imutável para o código que precisa de linhas: {@link #get(int)}
+ * monta um {@link Registro} a cada chamada. {@link #subList(int, int)} devolve outro lote sobre
+ * os mesmos arrays, sem cópia. Os serializadores leem as colunas direto de {@link #dados()}.
+ */
+public final class RegistroBatch extends AbstractList<Registro> implements RandomAccess {
+
+    public static final int NOME = 0;
+    public static final int EMAIL = 1;
+    public static final int TELEFONE = 2;
+    public static final int CPF = 3;
+    public static final int CAMPOS = 4;
+
+    private final byte[] dados;
+    private final int[] inicios;
+    private final int[] tamanhos;
+    private final LocalDateTime dataLeitura;
+    private final int primeira;
+    private final int quantidade;
+
+    private RegistroBatch(byte[] dados, int[] inicios, int[] tamanhos, LocalDateTime dataLeitura, int primeira, int quantidade) {
+        this.dados = dados;
+        this.inicios = inicios;
+        this.tamanhos = tamanhos;
+        this.dataLeitura = dataLeitura;
+        this.primeira = primeira;
+        this.quantidade = quantidade;
+    }
+
+    public static Builder builder(int linhasEsperadas) {
+        return new Builder(linhasEsperadas, LocalDateTime.now());
+    }
+
+    /**
+     * Copia uma lista de registros para um lote; a data de leitura do lote é a do primeiro.
+     */
+    public static RegistroBatch de(List<Registro> registros) {
+        if (registros instanceof RegistroBatch lote) {
+            return lote;
+        }
+        LocalDateTime data = registros.isEmpty() ? LocalDateTime.now() : registros.get(0).dataLeitura();
+        Builder builder = new Builder(registros.size(), data);
+        registros.forEach(builder::adicionar);
+        return builder.construir();
+    }
+
+    @Override
+    public Registro get(int linha) {
+        verificar(linha);
+        return new Registro(texto(linha, NOME), texto(linha, EMAIL), texto(linha, TELEFONE), texto(linha, CPF), dataLeitura);
+    }
+
+    @Override
+    public int size() {
+        return quantidade;
+    }
+
+    @Override
+    public RegistroBatch subList(int de, int ate) {
+        if (de < 0 || ate > quantidade || de > ate) {
+            throw new IndexOutOfBoundsException("Faixa " + de + ".." + ate + " fora de 0.." + quantidade);
+        }
+        return new RegistroBatch(dados, inicios, tamanhos, dataLeitura, primeira + de, ate - de);
+    }
+
+    /**
+     * Novo lote com as linhas indicadas, na ordem dada. Copia só os bytes dessas linhas.
+     */
+    public RegistroBatch selecionar(int[] linhas, int total) {
+        Builder builder = new Builder(total, dataLeitura);
+        for (int i = 0; i < total; i++) {
+            builder.copiar(this, linhas[i]);
+        }
+        return builder.construir();
+    }
+
+    public LocalDateTime dataLeitura() {
+        return dataLeitura;
+    }
+
+    /** Array compartilhado com os bytes UTF-8 de todas as células; não deve ser alterado. */
+    public byte[] dados() {
+        return dados;
+    }
+
+    public int inicio(int linha, int campo) {
+        return inicios[celula(linha, campo)];
+    }
+
+    /** Tamanho em bytes da célula, ou -1 quando o valor é null. */
+    public int tamanho(int linha, int campo) {
+        return tamanhos[celula(linha, campo)];
+    }
+
+    public String texto(int linha, int campo) {
+        int celula = celula(linha, campo);
+        int tamanho = tamanhos[celula];
+        return tamanho < 0 ? null : new String(dados, inicios[celula], tamanho, StandardCharsets.UTF_8);
+    }
+
+    /** Soma dos tamanhos em bytes dos campos de texto das linhas do lote. */
+    public long bytesDados() {
+        long total = 0;
+        int fim = (primeira + quantidade) * CAMPOS;
+        for (int celula = primeira * CAMPOS; celula < fim; celula++) {
+            total += Math.max(0, tamanhos[celula]);
+        }
+        return total;
+    }
+
+    private int celula(int linha, int campo) {
+        return (primeira + linha) * CAMPOS + campo;
+    }
+
+    private void verificar(int linha) {
+        if (linha < 0 || linha >= quantidade) {
+            throw new IndexOutOfBoundsException("Linha " + linha + " fora de 0.." + quantidade);
+        }
+    }
+
+    /**
+     * Monta um lote linha a linha. Cada {@link #novaLinha()} abre uma linha com os quatro campos
+     * null, preenchidos em qualquer ordem por {@link #campo}; os caracteres são gravados em
+     * UTF-8 direto no buffer do lote, sem criar Strings.
+     */
+    public static final class Builder {
+
+        private final LocalDateTime dataLeitura;
+        private byte[] dados;
+        private int[] inicios;
+        private int[] tamanhos;
+        private int posicao;
+        private int linhas;
+
+        private Builder(int linhasEsperadas, LocalDateTime dataLeitura) {
+            int capacidade = Math.max(1, linhasEsperadas);
+            this.dataLeitura = dataLeitura;
+            this.dados = new byte[capacidade * 32];
+            this.inicios = new int[capacidade * CAMPOS];
+            this.tamanhos = new int[capacidade * CAMPOS];
+        }
+
+        public int tamanho() {
+            return linhas;
+        }
+
+        public boolean isEmpty() {
+            return linhas == 0;
+        }
+
+        public void novaLinha() {
+            if ((linhas + 1) * CAMPOS > tamanhos.length) {
+                int capacidade = Math.max(linhas * 2, linhas + 1) * CAMPOS;
+                inicios = Arrays.copyOf(inicios, capacidade);
+                tamanhos = Arrays.copyOf(tamanhos, capacidade);
+            }
+            int celula = linhas * CAMPOS;
+            Arrays.fill(inicios, celula, celula + CAMPOS, posicao);
+            Arrays.fill(tamanhos, celula, celula + CAMPOS, -1);
+            linhas++;
+        }
+
+        public void campo(int campo, String valor) {
+            if (valor != null) {
+                campo(campo, valor.toCharArray(), 0, valor.length());
+            }
+        }
+
+        /**
+         * Grava {@code caracteres[de, ate)} como valor do campo na linha atual.
+         */
+        public void campo(int campo, char[] caracteres, int de, int ate) {
+            garantir((ate - de) * 3);
+            int inicio = posicao;
+            for (int i = de; i < ate; i++) {
+                char c = caracteres[i];
+                if (c < 0x80) {
+                    dados[posicao++] = (byte) c;
+                } else if (c < 0x800) {
+                    dados[posicao++] = (byte) (0xC0 | (c >> 6));
+                    dados[posicao++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < ate && Character.isLowSurrogate(caracteres[i + 1])) {
+                    int cp = Character.toCodePoint(c, caracteres[++i]);
+                    dados[posicao++] = (byte) (0xF0 | (cp >> 18));
+                    dados[posicao++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    dados[posicao++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    dados[posicao++] = (byte) (0x80 | (cp & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    dados[posicao++] = '?';
+                } else {
+                    dados[posicao++] = (byte) (0xE0 | (c >> 12));
+                    dados[posicao++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    dados[posicao++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            int celula = (linhas - 1) * CAMPOS + campo;
+            inicios[celula] = inicio;
+            tamanhos[celula] = posicao - inicio;
+        }
+
+        public void adicionar(Registro registro) {
+            novaLinha();
+            campo(NOME, registro.nome());
+            campo(EMAIL, registro.email());
+            campo(TELEFONE, registro.telefone());
+            campo(CPF, registro.cpf());
+        }
+
+        /** Copia os bytes de uma linha de outro lote, sem decodificar. */
+        public void copiar(RegistroBatch origem, int linha) {
+            novaLinha();
+            for (int campo = 0; campo < CAMPOS; campo++) {
+                int tamanho = origem.tamanho(linha, campo);
+                if (tamanho >= 0) {
+                    garantir(tamanho);
+                    System.arraycopy(origem.dados, origem.inicio(linha, campo), dados, posicao, tamanho);
+                    int celula = (linhas - 1) * CAMPOS + campo;
+                    inicios[celula] = posicao;
+                    tamanhos[celula] = tamanho;
+                    posicao += tamanho;
+                }
+            }
+        }
+
+        /**
+         * Fecha o lote, ajustando os arrays ao conteúdo para não reter a folga da montagem.
+         */
+        public RegistroBatch construir() {
+            return new RegistroBatch(Arrays.copyOf(dados, posicao), Arrays.copyOf(inicios, linhas * CAMPOS),
+                Arrays.copyOf(tamanhos, linhas * CAMPOS), dataLeitura, 0, linhas);
+        }
+
+        private void garantir(int adicional) {
+            if (posicao + adicional > dados.length) {
+                dados = Arrays.copyOf(dados, Math.max(dados.length * 2, posicao + adicional));
+            }
+        }
+    }
+}
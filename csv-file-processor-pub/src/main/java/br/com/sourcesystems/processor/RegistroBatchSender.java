@@ -2,71 +2,296 @@ package br.com.sourcesystems.processor;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.reactive.messaging.Channel;
 import org.eclipse.microprofile.reactive.messaging.Emitter;
+import org.eclipse.microprofile.reactive.messaging.Message;
 import org.jboss.logging.Logger;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
 import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
-import io.smallrye.mutiny.infrastructure.Infrastructure;
+import io.smallrye.reactive.messaging.kafka.api.OutgoingKafkaRecordMetadata;
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 
+import br.com.sourcesystems.serializer.RegistroSerializer;
 
 
+/**
+ * Envio dos lotes ao Kafka. Mede a latência até a confirmação do broker
+ * ({@code ingestor.send.latency}, com histograma), os lotes aguardando confirmação
+ * ({@code ingestor.send.em-voo}) e os envios com falha ({@code ingestor.send.falhas}).
+ *
+ * Lotes com {@link LoteOrigem} levam os {@link LoteHeaders} e o contexto do span
+ * {@code registros-csv publicar}, que cobre o lote do arquivo até a confirmação de todas as
+ * partes. O tracing do conector fica desligado no canal para não sobrescrever o
+ * {@code traceparent}.
+ *
+ * O payload é montado pelo {@link RegistroSerializer} no executor {@code serialize}, fora da
+ * thread única do produtor Kafka, e segue como bytes; a entrega ao produtor e o tratamento da
+ * confirmação rodam no executor {@code send}.
+ */
 @ApplicationScoped
 public class RegistroBatchSender {
 
     private static final Logger LOG = Logger.getLogger(RegistroBatchSender.class);
 
-    @ConfigProperty(name = "producer.batch.size", defaultValue = "100")
-    private int batchSize;
-
     @Inject
     @Channel("registros-csv") // canal configurado no application.properties
-    private Emitter<List<Registro>> emitter;
+    private Emitter<byte[]> emitter;
+
+    @ConfigProperty(name = "mp.messaging.outgoing.registros-csv.topic", defaultValue = "registros-csv")
+    private String topico;
+
+    @ConfigProperty(name = "mp.messaging.outgoing.registros-csv.registro.format", defaultValue = "json")
+    private String formato;
+
+    @Inject
+    private PartitionRouter router;
+
+    @Inject
+    private AdaptiveBatchSizer sizer;
+
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    @Inject
+    private OpenTelemetry openTelemetry;
+
+    @Inject
+    private Tracer tracer;
+
+    @Inject
+    private ExecutionStages estagios;
+
+    private RegistroSerializer serializador;
+
+    private final AtomicInteger emVoo = new AtomicInteger();
+
+    private Timer latencia;
+
+    private Counter falhas;
+
+    @PostConstruct
+    void init() {
+        latencia = Timer.builder("ingestor.send.latency")
+            .description("Tempo entre o envio do lote e a confirmação do broker")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        falhas = meterRegistry.counter("ingestor.send.falhas");
+        meterRegistry.gauge("ingestor.send.em-voo", emVoo);
+        serializador = new RegistroSerializer(meterRegistry);
+        serializador.configure(Map.of(RegistroSerializer.FORMATO_CONFIG, formato), false);
+    }
 
     public Uni<Void> enviarLote(List<Registro> lote) {
+        return enviarLote(lote, -1);
+    }
+
+    /**
+     * Envia o lote para a partição indicada; com {@code particao} negativa a escolha fica
+     * com o produtor. Completa quando o broker confirma a gravação.
+     */
+    public Uni<Void> enviarLote(List<Registro> lote, int particao) {
+        if (lote != null && !lote.isEmpty()) {
+            sizer.loteEnviado(lote, 1);
+        }
+        return medir(enviarLote(lote, particao, null, null));
+    }
+
+    private Uni<Void> enviarLote(List<Registro> lote, int particao, LoteOrigem origem, Context contexto) {
         if (lote == null || lote.isEmpty()) {
         LOG.warn("Lote vazio, nada será enviado.");
         return Uni.createFrom().voidItem();
         }
 
-        LOG.infof("Enviando lote com %d registros para o Kafka...", lote.size());
+        LOG.infof("Enviando lote com %d registros para o Kafka (partição %d)...", lote.size(), particao);
+
+        if (emitter.isCancelled()) {
+            // falha em vez de item: o checkpoint não pode avançar sobre um lote que não foi enviado
+            LOG.warn("Emitter foi cancelado. Abortando envio de lote.");
+            return Uni.createFrom().failure(new IllegalStateException("Emitter cancelado; lote de " + lote.size()
+                + " registros não enviado"));
+        }
+        return Uni.createFrom().item(() -> serializador.serialize(topico, lote))
+            .runSubscriptionOn(estagios.serializacao())
+            .emitOn(estagios.envio())
+            .chain(payload -> Uni.createFrom().completionStage(publicar(payload, particao, origem, contexto)))
+            .emitOn(estagios.envio())
+            .invoke(() -> LOG.info("Lote enviado com sucesso"))
+            .onFailure().invoke(e -> LOG.error("Erro ao enviar lote para Kafka", e));
+    }
 
+    /**
+     * Entrega o payload ao produtor; o stage completa com a confirmação do broker.
+     */
+    private CompletionStage<Void> publicar(byte[] payload, int particao, LoteOrigem origem, Context contexto) {
+        long inicio = System.nanoTime();
+        emVoo.incrementAndGet();
+        CompletionStage<Void> stage;
         try {
-            if (emitter.isCancelled()) {
-                LOG.warn("Emitter foi cancelado. Abortando envio de lote.");
-                return Uni.createFrom().voidItem();
+            if (origem != null) {
+                stage = enviarMensagem(payload, particao, headers(origem, contexto));
+            } else {
+                stage = particao < 0 ? emitter.send(payload) : enviarMensagem(payload, particao, null);
+            }
+        } catch (RuntimeException e) {
+            emVoo.decrementAndGet();
+            falhas.increment();
+            throw e;
+        }
+        return stage.whenComplete((ok, erro) -> {
+            emVoo.decrementAndGet();
+            if (erro == null) {
+                long nanos = System.nanoTime() - inicio;
+                latencia.record(nanos, TimeUnit.NANOSECONDS);
+            } else {
+                falhas.increment();
             }
-            CompletionStage<Void> stage = emitter.send(lote);
-            return Uni.createFrom().completionStage(stage)
-                .runSubscriptionOn(Infrastructure.getDefaultExecutor())
-                .invoke(() -> LOG.info("Lote enviado com sucesso"));
-        } catch (Exception e) {
-            LOG.error("Erro ao enviar lote para Kafka", e);
-            return Uni.createFrom().failure(e);
+        });
+    }
+
+    private CompletionStage<Void> enviarMensagem(byte[] payload, int particao, Headers headers) {
+        CompletableFuture<Void> confirmacao = new CompletableFuture<>();
+        OutgoingKafkaRecordMetadata.OutgoingKafkaRecordMetadataBuilder<Object> metadata = OutgoingKafkaRecordMetadata.builder();
+        if (particao >= 0) {
+            metadata.withPartition(particao);
         }
+        if (headers != null) {
+            metadata.withHeaders(headers);
+        }
+        Message<byte[]> mensagem = Message.of(payload)
+            .addMetadata(metadata.build())
+            .withAck(() -> {
+                confirmacao.complete(null);
+                return CompletableFuture.completedFuture(null);
+            })
+            .withNack(erro -> {
+                confirmacao.completeExceptionally(erro);
+                return CompletableFuture.completedFuture(null);
+            });
+        emitter.send(mensagem);
+        return confirmacao;
+    }
+
+    private Headers headers(LoteOrigem origem, Context contexto) {
+        Headers headers = new RecordHeaders();
+        LoteHeaders.adicionar(headers, LoteHeaders.ARQUIVO_ID, origem.arquivoId());
+        LoteHeaders.adicionar(headers, LoteHeaders.ARQUIVO_NOME, origem.arquivo());
+        LoteHeaders.adicionar(headers, LoteHeaders.REGISTRO_INICIAL, origem.registroInicial());
+        LoteHeaders.adicionar(headers, LoteHeaders.REGISTRO_FINAL, origem.registroFinal());
+        LoteHeaders.adicionar(headers, LoteHeaders.REGISTROS, origem.registros());
+        LoteHeaders.adicionar(headers, LoteHeaders.INGESTAO_US, origem.ingestaoMicros());
+        LoteHeaders.adicionar(headers, LoteHeaders.ENVIO_US, LoteHeaders.agoraMicros());
+        openTelemetry.getPropagators().getTextMapPropagator().inject(contexto, headers,
+            (destino, chave, valor) -> LoteHeaders.adicionar(destino, chave, valor));
+        return headers;
     }
 
     public Uni<Void> processarArquivo(Uni<List<Registro>> loteUni) {
-        return loteUni.onItem().transformToMulti(lote -> {
-            List<List<Registro>> batches = partition(lote, batchSize);
-            return Multi.createFrom().iterable(batches);
-        })
-        .onItem().transformToUniAndConcatenate(this::enviarLote)
-        .onFailure().invoke(t -> LOG.error("Erro durante o envio para Kafka", t))
-        .collect().asList()  // coleta todos os Void (na prática, só sincroniza a conclusão)
-        .replaceWithVoid(); 
+        return processarArquivo(loteUni, null);
     }
 
+    /**
+     * Envia um lote lido do arquivo, dividido por partição de destino. As partes seguem para
+     * o broker ao mesmo tempo e o {@code Uni} completa quando todas foram confirmadas. Com
+     * {@code origem}, cada parte leva os {@link LoteHeaders} com a sua própria faixa de registros
+     * e o contexto de trace do lote.
+     */
+    public Uni<Void> processarArquivo(Uni<List<Registro>> loteUni, LoteOrigem origem) {
+        if (origem == null) {
+            return enviarPartes(loteUni, null, null);
+        }
+        return Uni.createFrom().deferred(() -> {
+            Span span = tracer.spanBuilder("registros-csv publicar")
+                .setSpanKind(SpanKind.PRODUCER)
+                .setAttribute("arquivo.id", origem.arquivoId())
+                .setAttribute("arquivo.nome", origem.arquivo())
+                .setAttribute("arquivo.registro_inicial", origem.registroInicial())
+                .setAttribute("arquivo.registro_final", origem.registroFinal())
+                .startSpan();
+            Context contexto = Context.current().with(span);
+            return enviarPartes(loteUni, origem, contexto)
+                .onTermination().invoke((ok, erro, cancelado) -> {
+                    if (erro != null) {
+                        span.setStatus(StatusCode.ERROR);
+                        span.recordException(erro);
+                    }
+                    span.end();
+                });
+        });
+    }
+
+    private Uni<Void> enviarPartes(Uni<List<Registro>> loteUni, LoteOrigem origem, Context contexto) {
+        return loteUni.onItem().transformToUni(lote -> {
+            List<PartitionRouter.Parte> partes = router.isHabilitado()
+                ? router.rotear(lote)
+                : partes(lote, sizer.tamanhoLote());
+            if (!lote.isEmpty()) {
+                sizer.loteEnviado(lote, partes.size());
+            }
+            return medir(Multi.createFrom().iterable(partes)
+                .onItem().transformToUniAndMerge(parte -> enviarLote(parte.registros(), parte.particao(),
+                    origem == null ? null : origem.parte(parte.primeira(), parte.ultima(), parte.registros().size()), contexto))
+                .onFailure().invoke(t -> LOG.error("Erro durante o envio para Kafka", t))
+                .collect().asList()  // coleta todos os Void (na prática, só sincroniza a conclusão)
+                .replaceWithVoid());
+        });
+    }
+
+    /**
+     * Informa ao {@link AdaptiveBatchSizer} a latência do lote inteiro, da assinatura até a
+     * confirmação da última parte: uma amostra por lote lido, não por mensagem.
+     */
+    private Uni<Void> medir(Uni<Void> envio) {
+        return Uni.createFrom().deferred(() -> {
+            long inicio = System.nanoTime();
+            return envio.invoke(() -> sizer.loteConfirmado(System.nanoTime() - inicio));
+        });
+    }
+
+    /**
+     * Divide o lote em partes consecutivas de até {@code tamanho} registros, sem partição definida.
+     */
+    private static List<PartitionRouter.Parte> partes(List<Registro> lote, int tamanho) {
+        List<PartitionRouter.Parte> partes = new ArrayList<>();
+        int inicio = 0;
+        for (List<Registro> registros : partition(lote, tamanho)) {
+            partes.add(new PartitionRouter.Parte(-1, registros, inicio, inicio + registros.size() - 1));
+            inicio += registros.size();
+        }
+        return partes;
+    }
+
+    /**
+     * Divide a lista em visões de até {@code size} elementos, sem copiar; uma lista que já
+     * cabe em um lote é devolvida como está.
+     */
     public static <T> List<List<T>> partition(List<T> list, int size) {
+        if (list.size() <= size) {
+            return List.of(list);
+        }
         List<List<T>> partitions = new ArrayList<>();
         for (int i = 0; i < list.size(); i += size) {
-            partitions.add(new ArrayList<>(list.subList(i, Math.min(i + size, list.size()))));
+            partitions.add(list.subList(i, Math.min(i + size, list.size())));
         }
         return partitions;
     }
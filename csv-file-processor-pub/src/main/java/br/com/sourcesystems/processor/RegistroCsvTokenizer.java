@@ -0,0 +1,346 @@
+package br.com.sourcesystems.processor;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tokenizador do CSV delimitado por {@code ;} especializado no layout de {@link Registro}.
+ *
+ * Resolve o cabeçalho para índices de coluna uma única vez e varre um buffer de caracteres
+ * reutilizável; por registro só são alocadas as Strings dos campos usados, e nenhuma quando
+ * a leitura é feita direto para um {@link RegistroBatch} por {@link #lerPara}. Segue as mesmas
+ * regras do formato commons-csv usado antes: aspas duplas com {@code ""} como escape, trim
+ * dos valores, linhas vazias ignoradas e {@code \n}, {@code \r} ou {@code \r\n} como fim de registro.
+ *
+ * Também acompanha a posição em bytes UTF-8 do fim do último registro lido, usada nos
+ * checkpoints de retomada.
+ */
+public final class RegistroCsvTokenizer implements RegistroReader {
+
+    private static final char DELIMITADOR = ';';
+    private static final char ASPAS = '"';
+    private static final int TAMANHO_BUFFER = 64 * 1024;
+
+    private static final int FIM_CAMPO = 0;
+    private static final int FIM_REGISTRO = 1;
+    private static final int FIM_ARQUIVO = 2;
+
+    private static final String[] CAMPOS = { "nome", "email", "telefone", "cpf" };
+
+    private final Reader reader;
+    private char[] buffer = new char[TAMANHO_BUFFER];
+    private int posicao;
+    private int limite;
+    private int marca = -1;
+    private int escrita;
+    private boolean fimLeitura;
+    private int contados;
+    private long posicaoBytes;
+
+    private int[] destinos = new int[0];
+    private final int[] indices = new int[CAMPOS.length];
+    private final String[] valores = new String[CAMPOS.length];
+    private String[] cabecalho;
+    private List<String> coletor;
+    private RegistroBatch.Builder alvo;
+
+    private RegistroCsvTokenizer(Reader reader) {
+        this.reader = reader;
+    }
+
+    public static RegistroCsvTokenizer comCabecalho(Reader reader) throws IOException {
+        RegistroCsvTokenizer tokenizer = new RegistroCsvTokenizer(reader);
+        tokenizer.definirCabecalho(tokenizer.lerCabecalho());
+        return tokenizer;
+    }
+
+    public static RegistroCsvTokenizer semCabecalho(Reader reader, String[] cabecalho) {
+        RegistroCsvTokenizer tokenizer = new RegistroCsvTokenizer(reader);
+        tokenizer.definirCabecalho(cabecalho);
+        return tokenizer;
+    }
+
+    public String[] getCabecalho() {
+        return cabecalho.clone();
+    }
+
+    @Override
+    public long posicaoBytes() {
+        return posicaoBytes;
+    }
+
+    @Override
+    public Registro next() throws IOException {
+        if (!lerLinha()) {
+            return null;
+        }
+        return new Registro(valores[0], valores[1], valores[2], valores[3]);
+    }
+
+    @Override
+    public boolean lerPara(RegistroBatch.Builder lote) throws IOException {
+        alvo = lote;
+        try {
+            return lerLinha();
+        } finally {
+            alvo = null;
+        }
+    }
+
+    /**
+     * Lê um registro para {@code valores}, ou como nova linha de {@link #alvo} quando há um.
+     */
+    private boolean lerLinha() throws IOException {
+        if (!pularLinhasVazias()) {
+            contar(posicao);
+            return false;
+        }
+        if (alvo != null) {
+            alvo.novaLinha();
+        } else {
+            Arrays.fill(valores, null);
+        }
+        int coluna = 0;
+        int terminador;
+        do {
+            terminador = lerCampo(coluna < destinos.length ? destinos[coluna] : -1);
+            coluna++;
+        } while (terminador == FIM_CAMPO);
+        contar(posicao);
+
+        for (int i = 0; i < CAMPOS.length; i++) {
+            if (indices[i] < 0) {
+                throw new IllegalArgumentException(String.format("Mapping for %s not found, expected one of %s",
+                    CAMPOS[i], Arrays.toString(cabecalho)));
+            }
+            if (indices[i] >= coluna) {
+                throw new IllegalArgumentException(String.format("Index for header '%s' is %d but CSVRecord only has %d values!",
+                    CAMPOS[i], indices[i], coluna));
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private String[] lerCabecalho() throws IOException {
+        if (!pularLinhasVazias()) {
+            return new String[0];
+        }
+        coletor = new ArrayList<>();
+        try {
+            while (lerCampo(-1) == FIM_CAMPO) {
+                // coleta todas as colunas do cabeçalho
+            }
+            contar(posicao);
+            return coletor.toArray(String[]::new);
+        } finally {
+            coletor = null;
+        }
+    }
+
+    private void definirCabecalho(String[] nomes) {
+        for (String nome : nomes) {
+            if (nome == null || nome.isBlank()) {
+                throw new IllegalArgumentException("A header name is missing in " + Arrays.toString(nomes));
+            }
+        }
+        this.cabecalho = nomes.clone();
+        this.destinos = new int[nomes.length];
+        Arrays.fill(destinos, -1);
+        Arrays.fill(indices, -1);
+        for (int coluna = 0; coluna < nomes.length; coluna++) {
+            for (int i = 0; i < CAMPOS.length; i++) {
+                if (CAMPOS[i].equalsIgnoreCase(nomes[coluna])) {
+                    indices[i] = coluna;
+                }
+            }
+        }
+        for (int i = 0; i < CAMPOS.length; i++) {
+            if (indices[i] >= 0) {
+                destinos[indices[i]] = i;
+            }
+        }
+    }
+
+    private boolean pularLinhasVazias() throws IOException {
+        while (true) {
+            if (posicao == limite && !encher()) {
+                return false;
+            }
+            char c = buffer[posicao];
+            if (c != '\n' && c != '\r') {
+                return true;
+            }
+            posicao++;
+        }
+    }
+
+    private int lerCampo(int destino) throws IOException {
+        if (posicao == limite && !encher()) {
+            guardar(destino, posicao, posicao);
+            return FIM_ARQUIVO;
+        }
+        if (buffer[posicao] == ASPAS) {
+            posicao++;
+            return lerCampoEntreAspas(destino);
+        }
+        marca = posicao;
+        while (true) {
+            if (posicao == limite && !encher()) {
+                guardar(destino, marca, posicao);
+                return FIM_ARQUIVO;
+            }
+            char c = buffer[posicao];
+            if (c == DELIMITADOR) {
+                guardar(destino, marca, posicao++);
+                return FIM_CAMPO;
+            }
+            if (c == '\n' || c == '\r') {
+                guardar(destino, marca, posicao);
+                return consumirFimDeLinha();
+            }
+            posicao++;
+        }
+    }
+
+    private int lerCampoEntreAspas(int destino) throws IOException {
+        marca = posicao;
+        escrita = posicao;
+        while (true) {
+            if (posicao == limite && !encher()) {
+                throw new IOException("EOF reached before encapsulated token finished");
+            }
+            char c = buffer[posicao++];
+            if (c != ASPAS) {
+                buffer[escrita++] = c;
+                continue;
+            }
+            if (posicao == limite && !encher()) {
+                fecharCampoEntreAspas(destino);
+                return FIM_ARQUIVO;
+            }
+            if (buffer[posicao] == ASPAS) {
+                buffer[escrita++] = ASPAS;
+                posicao++;
+                continue;
+            }
+            fecharCampoEntreAspas(destino);
+            return depoisDasAspas();
+        }
+    }
+
+    /**
+     * O conteúdo entre aspas foi compactado em {@code [marca, escrita)}; o que sobra até
+     * {@code posicao} são as aspas removidas (escapes e a de fechamento), um byte cada.
+     */
+    private void fecharCampoEntreAspas(int destino) {
+        contar(marca);
+        posicaoBytes += bytesUtf8(marca, escrita) + (posicao - escrita);
+        contados = posicao;
+        guardar(destino, marca, escrita);
+    }
+
+    private int depoisDasAspas() throws IOException {
+        while (true) {
+            if (posicao == limite && !encher()) {
+                return FIM_ARQUIVO;
+            }
+            char c = buffer[posicao];
+            if (c == DELIMITADOR) {
+                posicao++;
+                return FIM_CAMPO;
+            }
+            if (c == '\n' || c == '\r') {
+                return consumirFimDeLinha();
+            }
+            if (!Character.isWhitespace(c)) {
+                throw new IOException("Invalid char between encapsulated token and delimiter");
+            }
+            posicao++;
+        }
+    }
+
+    private int consumirFimDeLinha() throws IOException {
+        if (buffer[posicao++] == '\r' && (posicao < limite || encher()) && buffer[posicao] == '\n') {
+            posicao++;
+        }
+        return FIM_REGISTRO;
+    }
+
+    private void guardar(int destino, int inicio, int fim) {
+        marca = -1;
+        if (destino < 0 && coletor == null) {
+            return;
+        }
+        while (inicio < fim && buffer[inicio] <= ' ') {
+            inicio++;
+        }
+        while (fim > inicio && buffer[fim - 1] <= ' ') {
+            fim--;
+        }
+        if (alvo != null && coletor == null) {
+            alvo.campo(destino, buffer, inicio, fim);
+            return;
+        }
+        String valor = new String(buffer, inicio, fim - inicio);
+        if (coletor != null) {
+            coletor.add(valor);
+        } else {
+            valores[destino] = valor;
+        }
+    }
+
+    private void contar(int ate) {
+        posicaoBytes += bytesUtf8(contados, ate);
+        contados = ate;
+    }
+
+    private long bytesUtf8(int inicio, int fim) {
+        long bytes = fim - inicio;
+        for (int i = inicio; i < fim; i++) {
+            char c = buffer[i];
+            if (c >= 0x80) {
+                bytes += c < 0x800 || Character.isSurrogate(c) ? 1 : 2;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Lê mais caracteres, preservando o campo em andamento a partir de {@code marca}.
+     */
+    private boolean encher() throws IOException {
+        if (fimLeitura) {
+            return false;
+        }
+        int inicio = marca >= 0 ? marca : posicao;
+        if (inicio > 0) {
+            contar(inicio);
+            System.arraycopy(buffer, inicio, buffer, 0, limite - inicio);
+            limite -= inicio;
+            posicao -= inicio;
+            escrita -= inicio;
+            contados -= inicio;
+            if (marca >= 0) {
+                marca = 0;
+            }
+        }
+        if (limite == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int lidos = reader.read(buffer, limite, buffer.length - limite);
+        if (lidos < 0) {
+            fimLeitura = true;
+            return false;
+        }
+        limite += lidos;
+        return true;
+    }
+}
@@ -0,0 +1,33 @@
+package br.com.sourcesystems.processor;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Fonte sequencial de {@link Registro} lidos de um CSV. Retorna {@code null} ao fim do arquivo.
+ */
+public interface RegistroReader extends Closeable {
+
+    Registro next() throws IOException;
+
+    /**
+     * Lê o próximo registro como uma nova linha de {@code lote}. Retorna {@code false} ao fim
+     * do arquivo. A implementação padrão passa por {@link #next()}.
+     */
+    default boolean lerPara(RegistroBatch.Builder lote) throws IOException {
+        Registro registro = next();
+        if (registro == null) {
+            return false;
+        }
+        lote.adicionar(registro);
+        return true;
+    }
+
+    /**
+     * Posição em bytes, a partir do início da leitura, logo após o último registro retornado,
+     * ou -1 quando a implementação não acompanha posições.
+     */
+    default long posicaoBytes() {
+        return -1;
+    }
+}
@@ -0,0 +1,47 @@
+package br.com.sourcesystems.processor;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Escolhe entre o tokenizador especializado e o commons-csv conforme
+ * {@code ingestor.reader.tokenizer.enabled}. Os dois caminhos produzem os mesmos registros.
+ */
+@ApplicationScoped
+public class RegistroReaderFactory {
+
+    private static final CSVFormat FORMATO = CSVFormat.Builder.create()
+        .setHeader()
+        .setSkipHeaderRecord(true)
+        .setIgnoreHeaderCase(true)
+        .setTrim(true)
+        .setDelimiter(';')
+        .get();
+
+    @ConfigProperty(name = "ingestor.reader.tokenizer.enabled", defaultValue = "true")
+    private boolean tokenizer;
+
+    public RegistroReader abrir(Reader reader) throws IOException {
+        if (tokenizer) {
+            return RegistroCsvTokenizer.comCabecalho(reader);
+        }
+        return new CommonsCsvRegistroReader(CSVParser.parse(reader, FORMATO));
+    }
+
+    public RegistroReader abrir(Reader reader, String[] cabecalho) throws IOException {
+        if (tokenizer) {
+            return RegistroCsvTokenizer.semCabecalho(reader, cabecalho);
+        }
+        CSVFormat format = FORMATO.builder()
+            .setHeader(cabecalho)
+            .setSkipHeaderRecord(false)
+            .get();
+        return new CommonsCsvRegistroReader(CSVParser.parse(reader, format));
+    }
+}
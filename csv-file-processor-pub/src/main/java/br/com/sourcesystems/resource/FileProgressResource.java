@@ -0,0 +1,36 @@
+package br.com.sourcesystems.resource;
+
+import java.util.List;
+
+import br.com.sourcesystems.processor.FileProgress;
+import br.com.sourcesystems.processor.FileProgressRegistry;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+
+@Path("/ingestao/arquivos")
+@Produces(MediaType.APPLICATION_JSON)
+public class FileProgressResource {
+
+    private final FileProgressRegistry registry;
+
+    public FileProgressResource(FileProgressRegistry registry) {
+        this.registry = registry;
+    }
+
+    @GET
+    public List<FileProgress> listar(@QueryParam("status") FileProgress.Status status) {
+        return status == null ? registry.listar() : registry.listar(status);
+    }
+
+    @GET
+    @Path("/{id}")
+    public FileProgress buscar(@PathParam("id") String id) {
+        return registry.buscar(id)
+            .orElseThrow(() -> new NotFoundException("Arquivo não encontrado: " + id));
+    }
+}
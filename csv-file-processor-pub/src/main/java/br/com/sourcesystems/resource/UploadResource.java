@@ -0,0 +1,71 @@
+package br.com.sourcesystems.resource;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Map;
+
+import br.com.sourcesystems.processor.FileIngestionService;
+import br.com.sourcesystems.processor.FileProgress;
+import io.smallrye.common.annotation.Blocking;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Recebe um CSV no corpo da requisição, inteiro ou em chunks, e o envia pelo mesmo pipeline
+ * dos arquivos de {@code app.files.dir}, sem gravar em disco. {@code nome} identifica o upload
+ * no progresso e nos headers das mensagens; terminado em {@code .csv.gz} ou {@code .csv.zst},
+ * o corpo é descomprimido.
+ *
+ * O corpo é lido no ritmo do envio ao Kafka, então um cliente mais rápido que o pipeline
+ * fica esperando na conexão. A resposta sai quando o corpo foi lido, com {@code 202} e o
+ * progresso do upload; o andamento até o último lote confirmado é consultado em
+ * {@code /ingestao/arquivos/{id}}.
+ */
+@Path("/ingestao/uploads")
+@Produces(MediaType.APPLICATION_JSON)
+public class UploadResource {
+
+    private static final int ESPERA_NOVA_TENTATIVA_S = 5;
+
+    private final FileIngestionService ingestao;
+
+    public UploadResource(FileIngestionService ingestao) {
+        this.ingestao = ingestao;
+    }
+
+    @POST
+    @Blocking
+    @Consumes({ "text/csv", MediaType.TEXT_PLAIN, MediaType.APPLICATION_OCTET_STREAM })
+    public Response enviar(InputStream corpo,
+            @QueryParam("nome") @DefaultValue("upload.csv") String nome,
+            @HeaderParam(HttpHeaders.CONTENT_LENGTH) @DefaultValue("-1") long tamanhoBytes) {
+        if (!FileIngestionService.isCsv(nome)) {
+            throw new BadRequestException("Nome do upload deve terminar em .csv, .csv.gz ou .csv.zst: " + nome);
+        }
+        FileProgress progresso;
+        try {
+            progresso = ingestao.receber(nome, corpo, tamanhoBytes).await().indefinitely();
+        } catch (FileIngestionService.UploadsEsgotadosException e) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, ESPERA_NOVA_TENTATIVA_S)
+                .entity(Map.of("erro", e.getMessage()))
+                .build();
+        }
+        Response.Status status = progresso.getStatus() == FileProgress.Status.FAILED
+            ? Response.Status.INTERNAL_SERVER_ERROR
+            : Response.Status.ACCEPTED;
+        return Response.status(status)
+            .location(URI.create("/ingestao/arquivos/" + progresso.getId()))
+            .entity(progresso)
+            .build();
+    }
+}
@@ -0,0 +1,53 @@
+package br.com.sourcesystems.serializer;
+
+import java.io.IOException;
+import java.time.format.DateTimeFormatter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import br.com.sourcesystems.processor.RegistroBatch;
+
+/**
+ * Escreve um {@link RegistroBatch} no mesmo JSON de um {@code List<Registro>} (array de objetos
+ * com {@code nome}, {@code email}, {@code telefone}, {@code cpf} e {@code dataLeitura} em ISO
+ * local), direto das colunas: os campos saem dos bytes UTF-8 do lote e a data é formatada uma
+ * vez por lote.
+ */
+public class RegistroBatchJsonSerializer extends StdSerializer<RegistroBatch> {
+
+    private static final String[] NOMES = { "nome", "email", "telefone", "cpf" };
+
+    public RegistroBatchJsonSerializer() {
+        super(RegistroBatch.class);
+    }
+
+    @Override
+    public void serialize(RegistroBatch lote, JsonGenerator gerador, SerializerProvider provider) throws IOException {
+        String data = lote.dataLeitura() == null ? null : DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(lote.dataLeitura());
+        byte[] dados = lote.dados();
+        int quantidade = lote.size();
+        gerador.writeStartArray(lote, quantidade);
+        for (int linha = 0; linha < quantidade; linha++) {
+            gerador.writeStartObject();
+            for (int campo = 0; campo < RegistroBatch.CAMPOS; campo++) {
+                gerador.writeFieldName(NOMES[campo]);
+                int tamanho = lote.tamanho(linha, campo);
+                if (tamanho < 0) {
+                    gerador.writeNull();
+                } else {
+                    gerador.writeUTF8String(dados, lote.inicio(linha, campo), tamanho);
+                }
+            }
+            gerador.writeFieldName("dataLeitura");
+            if (data == null) {
+                gerador.writeNull();
+            } else {
+                gerador.writeString(data);
+            }
+            gerador.writeEndObject();
+        }
+        gerador.writeEndArray();
+    }
+}
@@ -0,0 +1,217 @@
+package br.com.sourcesystems.serializer;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+
+import br.com.sourcesystems.processor.Registro;
+import br.com.sourcesystems.processor.RegistroBatch;
+
+/**
+ * Codifica um lote de {@link Registro} no formato binário versionado lido pelo
+ * {@code RegistroBinaryDecoder} do csv-file-processor-sub.
+ *
+ * <pre>
+ * magic      0xB1 'R' 'G'
+ * versão     1 byte (1)
+ * quantidade varint
+ * nome, email, telefone, cpf   uma coluna por campo; cada valor é varint(tamanho + 1)
+ *                              seguido dos bytes UTF-8, com 0 representando null
+ * dataLeitura 1 byte de flags (1 = há nulos, seguido de um bitmap de nulos) e, para cada
+ *             valor presente, varint zigzag da diferença em micros de época (UTC) para o anterior
+ * </pre>
+ *
+ * Os valores de cada coluna ficam contíguos, o que favorece a compressão do produtor. Um
+ * {@link RegistroBatch} já guarda os campos em UTF-8 e é copiado célula a célula, sem passar
+ * por {@link Registro}; a data única do lote vira um delta seguido de zeros.
+ */
+public final class RegistroBinaryEncoder {
+
+    public static final byte MAGIC_0 = (byte) 0xB1;
+    public static final byte MAGIC_1 = 'R';
+    public static final byte MAGIC_2 = 'G';
+    public static final byte VERSAO = 1;
+
+    private byte[] buffer;
+    private int posicao;
+
+    private RegistroBinaryEncoder(int capacidade) {
+        this.buffer = new byte[capacidade];
+    }
+
+    public static byte[] encode(List<Registro> registros) {
+        if (registros instanceof RegistroBatch lote) {
+            return encode(lote);
+        }
+        int quantidade = registros.size();
+        RegistroBinaryEncoder encoder = new RegistroBinaryEncoder(16 + quantidade * 64);
+        encoder.escreverByte(MAGIC_0);
+        encoder.escreverByte(MAGIC_1);
+        encoder.escreverByte(MAGIC_2);
+        encoder.escreverByte(VERSAO);
+        encoder.escreverVarLong(quantidade);
+
+        for (Registro r : registros) {
+            encoder.escreverTexto(r.nome());
+        }
+        for (Registro r : registros) {
+            encoder.escreverTexto(r.email());
+        }
+        for (Registro r : registros) {
+            encoder.escreverTexto(r.telefone());
+        }
+        for (Registro r : registros) {
+            encoder.escreverTexto(r.cpf());
+        }
+        encoder.escreverDatas(registros);
+        return Arrays.copyOf(encoder.buffer, encoder.posicao);
+    }
+
+    private static byte[] encode(RegistroBatch lote) {
+        int quantidade = lote.size();
+        RegistroBinaryEncoder encoder = new RegistroBinaryEncoder((int) Math.min(Integer.MAX_VALUE - 8,
+            16 + lote.bytesDados() + quantidade * (RegistroBatch.CAMPOS * 2L + 1)));
+        encoder.escreverByte(MAGIC_0);
+        encoder.escreverByte(MAGIC_1);
+        encoder.escreverByte(MAGIC_2);
+        encoder.escreverByte(VERSAO);
+        encoder.escreverVarLong(quantidade);
+
+        byte[] dados = lote.dados();
+        for (int campo = 0; campo < RegistroBatch.CAMPOS; campo++) {
+            for (int linha = 0; linha < quantidade; linha++) {
+                int tamanho = lote.tamanho(linha, campo);
+                if (tamanho < 0) {
+                    encoder.escreverVarLong(0);
+                    continue;
+                }
+                encoder.escreverVarLong(tamanho + 1L);
+                encoder.garantir(tamanho);
+                System.arraycopy(dados, lote.inicio(linha, campo), encoder.buffer, encoder.posicao, tamanho);
+                encoder.posicao += tamanho;
+            }
+        }
+
+        LocalDateTime data = lote.dataLeitura();
+        encoder.escreverByte((byte) (data == null && quantidade > 0 ? 1 : 0));
+        if (data == null) {
+            encoder.garantir((quantidade + 7) / 8);
+            Arrays.fill(encoder.buffer, encoder.posicao, encoder.posicao + (quantidade + 7) / 8, (byte) 0xFF);
+            encoder.posicao += (quantidade + 7) / 8;
+        } else if (quantidade > 0) {
+            long micros = paraMicros(data);
+            encoder.escreverVarLong((micros << 1) ^ (micros >> 63));
+            encoder.garantir(quantidade - 1);
+            Arrays.fill(encoder.buffer, encoder.posicao, encoder.posicao + quantidade - 1, (byte) 0);
+            encoder.posicao += quantidade - 1;
+        }
+        return Arrays.copyOf(encoder.buffer, encoder.posicao);
+    }
+
+    static long paraMicros(LocalDateTime data) {
+        return Math.addExact(Math.multiplyExact(data.toEpochSecond(ZoneOffset.UTC), 1_000_000L), data.getNano() / 1_000);
+    }
+
+    private void escreverDatas(List<Registro> registros) {
+        int quantidade = registros.size();
+        boolean temNulos = false;
+        for (Registro r : registros) {
+            if (r.dataLeitura() == null) {
+                temNulos = true;
+                break;
+            }
+        }
+        escreverByte((byte) (temNulos ? 1 : 0));
+        if (temNulos) {
+            garantir((quantidade + 7) / 8);
+            for (int i = 0; i < quantidade; i++) {
+                if (registros.get(i).dataLeitura() == null) {
+                    buffer[posicao + (i >>> 3)] |= (byte) (1 << (i & 7));
+                }
+            }
+            posicao += (quantidade + 7) / 8;
+        }
+        long anterior = 0;
+        for (Registro r : registros) {
+            if (r.dataLeitura() != null) {
+                long micros = paraMicros(r.dataLeitura());
+                long delta = micros - anterior;
+                escreverVarLong((delta << 1) ^ (delta >> 63));
+                anterior = micros;
+            }
+        }
+    }
+
+    private void escreverTexto(String valor) {
+        if (valor == null) {
+            escreverVarLong(0);
+            return;
+        }
+        int tamanho = tamanhoUtf8(valor);
+        escreverVarLong(tamanho + 1L);
+        garantir(tamanho);
+        int n = valor.length();
+        for (int i = 0; i < n; i++) {
+            char c = valor.charAt(i);
+            if (c < 0x80) {
+                buffer[posicao++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[posicao++] = (byte) (0xC0 | (c >> 6));
+                buffer[posicao++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(valor.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, valor.charAt(++i));
+                buffer[posicao++] = (byte) (0xF0 | (cp >> 18));
+                buffer[posicao++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buffer[posicao++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buffer[posicao++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[posicao++] = '?';
+            } else {
+                buffer[posicao++] = (byte) (0xE0 | (c >> 12));
+                buffer[posicao++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[posicao++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static int tamanhoUtf8(String valor) {
+        int n = valor.length();
+        int tamanho = n;
+        for (int i = 0; i < n; i++) {
+            char c = valor.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                tamanho += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(valor.charAt(i + 1))) {
+                tamanho += 2;
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                tamanho += 2;
+            }
+        }
+        return tamanho;
+    }
+
+    private void escreverVarLong(long valor) {
+        garantir(10);
+        while ((valor & ~0x7FL) != 0) {
+            buffer[posicao++] = (byte) ((valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+        buffer[posicao++] = (byte) valor;
+    }
+
+    private void escreverByte(byte valor) {
+        garantir(1);
+        buffer[posicao++] = valor;
+    }
+
+    private void garantir(int adicional) {
+        if (posicao + adicional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, posicao + adicional));
+        }
+    }
+}
@@ -1,29 +1,78 @@
 package br.com.sourcesystems.serializer;
 
 import java.util.List;
+import java.util.Map;
 
 import org.apache.kafka.common.serialization.Serializer;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
 import br.com.sourcesystems.processor.Registro;
+import br.com.sourcesystems.processor.RegistroBatch;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 
+/**
+ * Serializa o lote em JSON ou no formato binário. O tamanho de cada payload é registrado em
+ * {@code ingestor.serializer.bytes}, no {@link MeterRegistry} recebido do
+ * {@code RegistroBatchSender}; instanciado pelo cliente Kafka, sem CDI, usa o registro global do
+ * Micrometer.
+ */
 public class RegistroSerializer implements Serializer<List<Registro>> {
 
+    /** Formato do payload: {@code json} (padrão) ou {@code binary}. */
+    public static final String FORMATO_CONFIG = "registro.format";
+
     private final ObjectMapper objectMapper;
 
+    private final MeterRegistry meterRegistry;
+
+    private boolean binario;
+
+    private DistributionSummary bytesPorLote;
+
     public RegistroSerializer() {
+        this(Metrics.globalRegistry);
+    }
+
+    public RegistroSerializer(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
         this.objectMapper = new ObjectMapper();
         this.objectMapper.registerModule(new JavaTimeModule());
         this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.objectMapper.registerModule(new SimpleModule()
+            .addSerializer(RegistroBatch.class, new RegistroBatchJsonSerializer()));
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object formato = configs.get(FORMATO_CONFIG);
+        if (formato == null || "json".equalsIgnoreCase(formato.toString())) {
+            binario = false;
+        } else if ("binary".equalsIgnoreCase(formato.toString())) {
+            binario = true;
+        } else {
+            throw new IllegalArgumentException("Formato de serialização desconhecido: " + formato);
+        }
+        bytesPorLote = DistributionSummary.builder("ingestor.serializer.bytes")
+            .description("Tamanho do payload de cada lote serializado")
+            .baseUnit("bytes")
+            .tag("formato", binario ? "binary" : "json")
+            .register(meterRegistry);
     }
 
     @Override
     public byte[] serialize(String topic, List<Registro> registros) {
         try {
-            return objectMapper.writeValueAsBytes(registros);
+            byte[] payload = binario ? RegistroBinaryEncoder.encode(registros) : objectMapper.writeValueAsBytes(registros);
+            if (bytesPorLote != null) {
+                bytesPorLote.record(payload.length);
+            }
+            return payload;
         } catch (Exception e) {
             throw new RuntimeException("Erro ao serializar registros", e);
         }
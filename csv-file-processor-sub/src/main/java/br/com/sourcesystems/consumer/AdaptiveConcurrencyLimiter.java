@@ -0,0 +1,185 @@
+package br.com.sourcesystems.consumer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.subscription.UniEmitter;
+
+/**
+ * Limite de gravações simultâneas no MongoDB ajustado por AIMD.
+ *
+ * Cada gravação concluída dentro de {@code latenciaAlvoNanos} soma {@code 1 / limite} ao
+ * limite (cerca de +1 por rodada de gravações). Uma gravação lenta ou com erro de sobrecarga
+ * multiplica o limite por {@code fatorReducao}, no máximo uma vez a cada latência média, para
+ * que as respostas de uma mesma rodada não reduzam o limite várias vezes. O limite fica entre
+ * {@code minimo} e {@code maximo}.
+ *
+ * Cada execução tem uma {@link Vaga} que é concedida e encerrada uma única vez, então um
+ * cancelamento em qualquer ponto, inclusive entre a concessão e o início da gravação, devolve
+ * a vaga exatamente uma vez.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    /** Peso da amostra mais recente na latência média. */
+    private static final double PESO = 0.2;
+
+    private final int minimo;
+    private final int maximo;
+    private final long latenciaAlvoNanos;
+    private final double fatorReducao;
+    private final Predicate<Throwable> sobrecarga;
+
+    private final Deque<Vaga> espera = new ArrayDeque<>();
+    private double limite;
+    private int emUso;
+    private double latenciaMedia;
+    private long ultimaReducao;
+
+    public AdaptiveConcurrencyLimiter(int minimo, int maximo, int inicial, long latenciaAlvoNanos, double fatorReducao,
+            Predicate<Throwable> sobrecarga) {
+        if (minimo < 1 || maximo < minimo) {
+            throw new IllegalArgumentException("Limites de concorrência inválidos: min=" + minimo + ", max=" + maximo);
+        }
+        this.minimo = minimo;
+        this.maximo = maximo;
+        this.limite = Math.max(minimo, Math.min(maximo, inicial));
+        this.latenciaAlvoNanos = latenciaAlvoNanos;
+        this.fatorReducao = fatorReducao;
+        this.sobrecarga = sobrecarga;
+    }
+
+    /**
+     * Executa {@code acao} quando houver vaga no limite atual, mede a duração e devolve a vaga
+     * ao final, inclusive em falha ou cancelamento.
+     */
+    public <T> Uni<T> executar(Supplier<Uni<? extends T>> acao) {
+        return Uni.createFrom().deferred(() -> {
+            Vaga vaga = new Vaga();
+            return acquire(vaga)
+                .onItem().transformToUni(ignorado -> {
+                    long inicio = System.nanoTime();
+                    return Uni.createFrom().<T>deferred(acao)
+                        .onItemOrFailure().invoke((item, erro) -> {
+                            if (vaga.estado.compareAndSet(Vaga.CONCEDIDA, Vaga.ENCERRADA)) {
+                                amostra(System.nanoTime() - inicio, erro);
+                            }
+                        });
+                })
+                .onTermination().invoke(() -> encerrar(vaga));
+        });
+    }
+
+    public synchronized int limite() {
+        return (int) limite;
+    }
+
+    public synchronized int emUso() {
+        return emUso;
+    }
+
+    public synchronized int aguardando() {
+        return espera.size();
+    }
+
+    public synchronized double latenciaMediaMs() {
+        return latenciaMedia / 1_000_000;
+    }
+
+    private Uni<Void> acquire(Vaga vaga) {
+        return Uni.createFrom().emitter(emitter -> {
+            boolean livre;
+            synchronized (this) {
+                vaga.emitter = emitter;
+                livre = emUso < (int) limite;
+                if (livre) {
+                    emUso++;
+                } else {
+                    espera.add(vaga);
+                }
+            }
+            if (livre && !entregar(vaga)) {
+                release();
+            }
+        });
+    }
+
+    /**
+     * Encerramento sem amostra (cancelamento, ou gravação já amostrada): devolve a vaga se
+     * ainda concedida ou tira a espera da fila.
+     */
+    private void encerrar(Vaga vaga) {
+        int anterior = vaga.estado.getAndSet(Vaga.ENCERRADA);
+        if (anterior == Vaga.CONCEDIDA) {
+            release();
+        } else if (anterior == Vaga.AGUARDANDO) {
+            synchronized (this) {
+                espera.remove(vaga);
+            }
+        }
+    }
+
+    private void amostra(long latenciaNanos, Throwable erro) {
+        synchronized (this) {
+            latenciaMedia = latenciaMedia == 0 ? latenciaNanos : latenciaMedia + PESO * (latenciaNanos - latenciaMedia);
+            boolean congestionado = latenciaNanos > latenciaAlvoNanos || (erro != null && sobrecarga.test(erro));
+            long agora = System.nanoTime();
+            if (congestionado) {
+                if (agora - ultimaReducao >= latenciaMedia) {
+                    limite = Math.max(minimo, limite * fatorReducao);
+                    ultimaReducao = agora;
+                }
+            } else if (erro == null) {
+                limite = Math.min(maximo, limite + 1 / limite);
+            }
+        }
+        release();
+    }
+
+    /**
+     * Devolve a vaga e entrega as vagas livres a quem espera; com o limite aumentado pode haver
+     * mais de uma, com o limite reduzido nenhuma até o uso cair abaixo dele. Uma vaga entregue a
+     * uma espera já cancelada é devolvida de novo.
+     */
+    private void release() {
+        int devolvidas = 1;
+        while (devolvidas > 0) {
+            List<Vaga> liberadas = new ArrayList<>();
+            synchronized (this) {
+                emUso -= devolvidas;
+                while (emUso < (int) limite && !espera.isEmpty()) {
+                    emUso++;
+                    liberadas.add(espera.poll());
+                }
+            }
+            devolvidas = 0;
+            for (Vaga liberada : liberadas) {
+                if (!entregar(liberada)) {
+                    devolvidas++;
+                }
+            }
+        }
+    }
+
+    private static boolean entregar(Vaga vaga) {
+        if (!vaga.estado.compareAndSet(Vaga.AGUARDANDO, Vaga.CONCEDIDA)) {
+            return false;
+        }
+        vaga.emitter.complete(null);
+        return true;
+    }
+
+    private static final class Vaga {
+        static final int AGUARDANDO = 0;
+        static final int CONCEDIDA = 1;
+        static final int ENCERRADA = 2;
+
+        final AtomicInteger estado = new AtomicInteger(AGUARDANDO);
+        UniEmitter<? super Void> emitter;
+    }
+}
@@ -0,0 +1,153 @@
+package br.com.sourcesystems.consumer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.TextMapGetter;
+import io.smallrye.reactive.messaging.kafka.KafkaRecord;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Latência de cada mensagem do pub até a gravação no MongoDB, a partir dos {@link LoteHeaders}.
+ * O timer {@code consumer.latencia.lote} é dividido por {@code etapa}:
+ * <ul>
+ * <li>{@code fila}: da leitura do arquivo até a entrega ao produtor, no pub;</li>
+ * <li>{@code broker}: do produtor até o poll do sub, com o atraso do consumidor;</li>
+ * <li>{@code gravacao}: do poll até a confirmação do MongoDB, com a fila da partição, a
+ * deduplicação e o buffer de escrita;</li>
+ * <li>{@code total}: da leitura do arquivo até a confirmação do MongoDB.</li>
+ * </ul>
+ * Só mensagens gravadas sem erro entram nos timers; diferenças negativas, de relógios
+ * dessincronizados entre as máquinas, são descartadas. Cada mensagem abre o span
+ * {@code registros-csv gravar}, filho do span do lote no pub, do poll até a confirmação.
+ */
+@ApplicationScoped
+public class BatchLatencyTracker {
+
+    private static final TextMapGetter<Headers> HEADERS = new TextMapGetter<>() {
+
+        @Override
+        public Iterable<String> keys(Headers headers) {
+            List<String> chaves = new ArrayList<>();
+            for (Header header : headers) {
+                chaves.add(header.key());
+            }
+            return chaves;
+        }
+
+        @Override
+        public String get(Headers headers, String chave) {
+            return LoteHeaders.texto(headers, chave);
+        }
+    };
+
+    private static final Rastreio SEM_ORIGEM = erro -> {
+    };
+
+    private final MeterRegistry meterRegistry;
+
+    private final OpenTelemetry openTelemetry;
+
+    private final Tracer tracer;
+
+    private Timer fila;
+
+    private Timer broker;
+
+    private Timer gravacao;
+
+    private Timer total;
+
+    public BatchLatencyTracker(MeterRegistry meterRegistry, OpenTelemetry openTelemetry, Tracer tracer) {
+        this.meterRegistry = meterRegistry;
+        this.openTelemetry = openTelemetry;
+        this.tracer = tracer;
+    }
+
+    @PostConstruct
+    void init() {
+        fila = timer("fila");
+        broker = timer("broker");
+        gravacao = timer("gravacao");
+        total = timer("total");
+    }
+
+    private Timer timer(String etapa) {
+        return Timer.builder("consumer.latencia.lote")
+            .description("Latência de um lote do pub por etapa, até a gravação no MongoDB")
+            .tag("etapa", etapa)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+    }
+
+    /**
+     * Começa a acompanhar a mensagem recebida no poll de {@code recebidoMicros}. Mensagens sem
+     * os headers de origem não são medidas.
+     */
+    public Rastreio iniciar(KafkaRecord<?, ?> mensagem, long recebidoMicros) {
+        Headers headers = mensagem.getHeaders();
+        long ingestao = LoteHeaders.numero(headers, LoteHeaders.INGESTAO_US);
+        if (ingestao < 0) {
+            return SEM_ORIGEM;
+        }
+        long envio = LoteHeaders.numero(headers, LoteHeaders.ENVIO_US);
+        Context pai = openTelemetry.getPropagators().getTextMapPropagator().extract(Context.root(), headers, HEADERS);
+        Span span = tracer.spanBuilder("registros-csv gravar")
+            .setParent(pai)
+            .setSpanKind(SpanKind.CONSUMER)
+            .setStartTimestamp(recebidoMicros, TimeUnit.MICROSECONDS)
+            .setAttribute("arquivo.id", String.valueOf(LoteHeaders.texto(headers, LoteHeaders.ARQUIVO_ID)))
+            .setAttribute("arquivo.nome", String.valueOf(LoteHeaders.texto(headers, LoteHeaders.ARQUIVO_NOME)))
+            .setAttribute("arquivo.registro_inicial", LoteHeaders.numero(headers, LoteHeaders.REGISTRO_INICIAL))
+            .setAttribute("arquivo.registro_final", LoteHeaders.numero(headers, LoteHeaders.REGISTRO_FINAL))
+            .setAttribute("arquivo.registros", LoteHeaders.numero(headers, LoteHeaders.REGISTROS))
+            .setAttribute("messaging.kafka.partition", mensagem.getPartition())
+            .setAttribute("messaging.kafka.offset", mensagem.getOffset())
+            .startSpan();
+
+        return erro -> {
+            long gravado = LoteHeaders.agoraMicros();
+            if (erro == null) {
+                if (envio >= 0) {
+                    registrar(fila, envio - ingestao);
+                    registrar(broker, recebidoMicros - envio);
+                }
+                registrar(gravacao, gravado - recebidoMicros);
+                registrar(total, gravado - ingestao);
+            } else {
+                span.setStatus(StatusCode.ERROR);
+                span.recordException(erro);
+            }
+            span.end(gravado, TimeUnit.MICROSECONDS);
+        };
+    }
+
+    private static void registrar(Timer timer, long micros) {
+        if (micros >= 0) {
+            timer.record(micros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /**
+     * Acompanhamento de uma mensagem; {@link #concluir} é chamado uma vez, quando a gravação
+     * termina, com o erro quando ela falhou.
+     */
+    @FunctionalInterface
+    public interface Rastreio {
+
+        void concluir(Throwable erro);
+    }
+}
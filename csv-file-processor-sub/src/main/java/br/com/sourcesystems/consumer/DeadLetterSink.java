@@ -0,0 +1,449 @@
+package br.com.sourcesystems.consumer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.bson.types.ObjectId;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.mongodb.reactive.ReactiveMongoClient;
+import io.quarkus.mongodb.reactive.ReactiveMongoCollection;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+
+/**
+ * Destino dos registros que não puderam ser gravados em {@code registros}.
+ *
+ * Os registros entram em uma fila limitada em memória e são gravados em {@code registros_falhos}
+ * em lote, agrupados por mensagem de erro no formato lido pelo {@code ReprocessadorService}:
+ * {@code {erro, documento: [...], timestamp, status, tentativas, disponivelEm}}. Cada registro
+ * entra em {@code documento} já com o {@code _id} que terá em {@code registros}, então o
+ * reprocessamento de um registro que já foi gravado volta como chave duplicada em vez de gravar
+ * uma segunda cópia. Com a fila cheia, ou quando o MongoDB falha,
+ * os grupos vão para um arquivo local só de acréscimo ({@code consumer.dead-letter.spill-file}),
+ * reenviado ao MongoDB assim que uma gravação volta a funcionar. Cada grupo vai para o arquivo
+ * com o seu {@code _id}, então um grupo que já tinha entrado (gravação parcial, tempo excedido
+ * ou reenvio interrompido) volta como chave duplicada e é tratado como gravado. Com
+ * {@code consumer.dead-letter.overflow=block} a fila nunca passa da capacidade: os registros
+ * que não cabem esperam espaço e seguram o consumo do Kafka em vez de usar o arquivo.
+ */
+@ApplicationScoped
+public class DeadLetterSink {
+
+    private static final Logger LOG = Logger.getLogger(DeadLetterSink.class);
+
+    private static final String DATABASE_NAME = "arquivos";
+    private static final String REGISTROS_FALHOS_COLLECTION = "registros_falhos";
+
+    private static final CodecRegistry CODECS = CodecRegistries.fromRegistries(
+        MongoClientSettings.getDefaultCodecRegistry(),
+        CodecRegistries.fromProviders(new RegistroCodecProvider()));
+
+    private static final InsertManyOptions INSERCAO_SEM_ORDEM = new InsertManyOptions().ordered(false);
+
+    private static final int CHAVE_DUPLICADA = 11000;
+
+    private static final JsonWriterSettings JSON = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+
+    @ConfigProperty(name = "consumer.dead-letter.capacity", defaultValue = "50000")
+    private int capacidade;
+
+    @ConfigProperty(name = "consumer.dead-letter.flush-size", defaultValue = "1000")
+    private int tamanhoGravacao;
+
+    @ConfigProperty(name = "consumer.dead-letter.flush-interval", defaultValue = "1s")
+    private Duration intervalo;
+
+    @ConfigProperty(name = "consumer.dead-letter.write-timeout", defaultValue = "10s")
+    private Duration tempoLimite;
+
+    @ConfigProperty(name = "consumer.dead-letter.overflow", defaultValue = "spill")
+    private String transbordo;
+
+    @ConfigProperty(name = "consumer.dead-letter.spill-file", defaultValue = "app/data/registros_falhos.ndjson")
+    private String arquivoSpill;
+
+    private final ReactiveMongoClient mongoClient;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Deque<Falha> fila = new ArrayDeque<>();
+
+    private final Deque<CompletableFuture<Void>> aguardandoEspaco = new ArrayDeque<>();
+
+    /** Acréscimos ao arquivo local e a troca dele pelo arquivo de reenvio; separado da fila. */
+    private final Object arquivoLock = new Object();
+
+    private ScheduledExecutorService gravacao;
+
+    private Counter gravados;
+
+    private Counter spillRegistros;
+
+    private Counter spillBytes;
+
+    private Counter reenviados;
+
+    public DeadLetterSink(ReactiveMongoClient mongoClient, MeterRegistry meterRegistry) {
+        this.mongoClient = mongoClient;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void initMetrics() {
+        gravados = meterRegistry.counter("consumer.dead-letter.gravados");
+        spillRegistros = meterRegistry.counter("consumer.dead-letter.spill.registros");
+        spillBytes = meterRegistry.counter("consumer.dead-letter.spill.bytes");
+        reenviados = meterRegistry.counter("consumer.dead-letter.spill.reenviados");
+        meterRegistry.gauge("consumer.dead-letter.fila", this, DeadLetterSink::tamanhoFila);
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        gravacao = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "dead-letter-sink");
+            t.setDaemon(true);
+            return t;
+        });
+        gravacao.scheduleWithFixedDelay(this::gravarPendentes, intervalo.toMillis(), intervalo.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        if (gravacao == null) {
+            return;
+        }
+        gravacao.shutdown();
+        try {
+            gravacao.awaitTermination(tempoLimite.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Falha> restantes;
+        synchronized (this) {
+            restantes = new ArrayList<>(fila);
+            fila.clear();
+        }
+        if (!restantes.isEmpty()) {
+            LOG.infof("Gravando %d registros com erro no arquivo local antes de encerrar", restantes.size());
+            spill(agrupar(restantes));
+        }
+    }
+
+    /**
+     * Enfileira os registros com a mensagem de erro. O stage completa quando eles estão na
+     * fila ou no arquivo local; no modo {@code block}, os que não cabem esperam espaço na fila
+     * e o stage só completa quando todos entraram e ainda há espaço.
+     */
+    public CompletionStage<Void> enviar(List<Registro> registros, String erro) {
+        if (registros.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long agora = System.currentTimeMillis();
+        int aceitos;
+        boolean cheio;
+        synchronized (this) {
+            aceitos = Math.min(Math.max(0, capacidade - fila.size()), registros.size());
+            for (int i = 0; i < aceitos; i++) {
+                fila.add(new Falha(registros.get(i), erro, agora));
+            }
+            cheio = fila.size() >= tamanhoGravacao;
+        }
+        if (cheio && gravacao != null && !gravacao.isShutdown()) {
+            gravacao.execute(this::gravarPendentes);
+        }
+        if (aceitos < registros.size()) {
+            List<Registro> restantes = registros.subList(aceitos, registros.size());
+            if (bloquear()) {
+                return espacoLivre().thenCompose(ignorado -> enviar(restantes, erro));
+            }
+            LOG.warnf("Fila de erros cheia, %d registros gravados no arquivo local", restantes.size());
+            List<Falha> excedentes = new ArrayList<>(restantes.size());
+            for (Registro registro : restantes) {
+                excedentes.add(new Falha(registro, erro, agora));
+            }
+            spill(agrupar(excedentes));
+        }
+        return bloquear() ? espacoLivre() : CompletableFuture.completedFuture(null);
+    }
+
+    public CompletionStage<Void> enviar(Registro registro, String erro) {
+        return enviar(List.of(registro), erro);
+    }
+
+    /**
+     * Completa quando a fila está abaixo da capacidade; usado para segurar o consumo do Kafka.
+     */
+    public synchronized CompletionStage<Void> espacoLivre() {
+        if (fila.size() < capacidade) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> espera = new CompletableFuture<>();
+        aguardandoEspaco.add(espera);
+        return espera;
+    }
+
+    public synchronized int tamanhoFila() {
+        return fila.size();
+    }
+
+    private boolean bloquear() {
+        return "block".equalsIgnoreCase(transbordo);
+    }
+
+    private void gravarPendentes() {
+        try {
+            while (true) {
+                List<Falha> lote = retirar();
+                if (lote.isEmpty()) {
+                    break;
+                }
+                List<Document> grupos = agrupar(lote);
+                if (!gravar(grupos)) {
+                    spill(grupos);
+                    return;
+                }
+                gravados.increment(lote.size());
+            }
+            reenviarSpill();
+        } catch (RuntimeException e) {
+            LOG.error("Erro inesperado na gravação de registros com erro", e);
+        }
+    }
+
+    private List<Falha> retirar() {
+        List<Falha> lote = new ArrayList<>(tamanhoGravacao);
+        List<CompletableFuture<Void>> liberadas = new ArrayList<>();
+        synchronized (this) {
+            while (lote.size() < tamanhoGravacao && !fila.isEmpty()) {
+                lote.add(fila.poll());
+            }
+            while (!aguardandoEspaco.isEmpty() && fila.size() < capacidade) {
+                liberadas.add(aguardandoEspaco.poll());
+            }
+        }
+        liberadas.forEach(espera -> espera.complete(null));
+        return lote;
+    }
+
+    private List<Document> agrupar(List<Falha> falhas) {
+        Map<String, Document> grupos = new LinkedHashMap<>();
+        for (Falha falha : falhas) {
+            Document grupo = grupos.computeIfAbsent(falha.erro(), erro -> new Document()
+                .append("erro", erro)
+                .append("documento", new ArrayList<Document>())
+                .append("timestamp", falha.timestamp())
+                .append("status", "PENDENTE")
+                .append("tentativas", 0)
+                .append("disponivelEm", new Date(falha.timestamp())));
+            grupo.getList("documento", Document.class).add(documento(falha.registro()));
+        }
+        return new ArrayList<>(grupos.values());
+    }
+
+    /**
+     * O registro no mesmo formato do {@link RegistroCodec}, com o {@code _id} definitivo.
+     */
+    private static Document documento(Registro registro) {
+        return new Document("_id", new ObjectId())
+            .append("nome", registro.nome())
+            .append("email", registro.email())
+            .append("telefone", registro.telefone())
+            .append("cpf", registro.cpf())
+            .append("dataLeitura", registro.dataLeitura() == null
+                ? null
+                : Date.from(registro.dataLeitura().toInstant(ZoneOffset.UTC)));
+    }
+
+    private boolean gravar(List<Document> grupos) {
+        try {
+            colecao().insertMany(grupos).await().atMost(tempoLimite);
+            return true;
+        } catch (RuntimeException e) {
+            LOG.error("Erro ao gravar registros com erro no MongoDB, usando o arquivo local", e);
+            return false;
+        }
+    }
+
+    /**
+     * Acrescenta os grupos ao arquivo local. Só a escrita segura {@code arquivoLock}; o
+     * {@code force} roda depois, sem bloquear outros acréscimos nem a fila.
+     */
+    private void spill(List<Document> grupos) {
+        Path arquivo = Paths.get(arquivoSpill);
+        DocumentCodec codec = new DocumentCodec(CODECS);
+        try {
+            if (arquivo.getParent() != null) {
+                Files.createDirectories(arquivo.getParent());
+            }
+            long registros = 0;
+            long bytes = 0;
+            try (FileChannel channel = FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                synchronized (arquivoLock) {
+                    Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+                    for (Document grupo : grupos) {
+                        // o mesmo _id em todas as tentativas torna o reenvio idempotente
+                        if (!grupo.containsKey("_id")) {
+                            grupo.put("_id", new ObjectId());
+                        }
+                        String linha = grupo.toJson(JSON, codec) + "\n";
+                        writer.write(linha);
+                        registros += grupo.getList("documento", Object.class).size();
+                        bytes += linha.getBytes(StandardCharsets.UTF_8).length;
+                    }
+                    writer.flush();
+                }
+                channel.force(false);
+            }
+            spillRegistros.increment(registros);
+            spillBytes.increment(bytes);
+        } catch (IOException e) {
+            LOG.error("Erro ao gravar registros com erro em " + arquivoSpill + ", registros perdidos: " + grupos.size() + " grupos", e);
+        }
+    }
+
+    /**
+     * Reenvia o arquivo local ao MongoDB. O arquivo é renomeado antes da leitura, então novos
+     * registros continuam sendo acrescentados a um arquivo novo. Se o MongoDB ficar indisponível
+     * no meio, o arquivo renomeado fica inteiro para a próxima tentativa (os grupos já gravados
+     * voltam como chave duplicada); os grupos recusados por outro erro de escrita são os únicos
+     * que continuam no arquivo depois de uma leitura completa.
+     */
+    private void reenviarSpill() {
+        Path arquivo = Paths.get(arquivoSpill);
+        Path reenvio = arquivo.resolveSibling(arquivo.getFileName() + ".reenvio");
+        try {
+            if (!Files.exists(reenvio)) {
+                synchronized (arquivoLock) {
+                    if (!Files.exists(arquivo) || Files.size(arquivo) == 0) {
+                        return;
+                    }
+                    Files.move(arquivo, reenvio, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+            long total = 0;
+            List<Document> recusados = new ArrayList<>();
+            try (BufferedReader reader = Files.newBufferedReader(reenvio, StandardCharsets.UTF_8)) {
+                List<Document> grupos = new ArrayList<>();
+                String linha;
+                while ((linha = reader.readLine()) != null) {
+                    if (linha.isBlank()) {
+                        continue;
+                    }
+                    grupos.add(Document.parse(linha));
+                    if (grupos.size() >= tamanhoGravacao) {
+                        if (!reenviar(grupos, recusados)) {
+                            return;
+                        }
+                        total += grupos.size();
+                        grupos.clear();
+                    }
+                }
+                if (!grupos.isEmpty() && !reenviar(grupos, recusados)) {
+                    return;
+                }
+                total += grupos.size();
+            }
+            if (recusados.isEmpty()) {
+                Files.delete(reenvio);
+                LOG.infof("Arquivo local de erros reenviado ao MongoDB: %d grupos", total);
+            } else {
+                manter(reenvio, recusados);
+                LOG.warnf("Arquivo local de erros reenviado ao MongoDB: %d grupos, %d recusados mantidos em %s",
+                    total - recusados.size(), recusados.size(), reenvio);
+            }
+        } catch (IOException e) {
+            LOG.error("Erro ao reenviar " + arquivoSpill, e);
+        }
+    }
+
+    /**
+     * Insere sem ordem. Chave duplicada é grupo já gravado; os grupos com outros erros de
+     * escrita vão para {@code recusados}. Retorna {@code false} se o comando inteiro falhou.
+     */
+    private boolean reenviar(List<Document> grupos, List<Document> recusados) {
+        List<BulkWriteError> erros = List.of();
+        try {
+            colecao().insertMany(grupos, INSERCAO_SEM_ORDEM).await().atMost(tempoLimite);
+        } catch (MongoBulkWriteException e) {
+            erros = e.getWriteErrors();
+        } catch (RuntimeException e) {
+            LOG.warn("MongoDB indisponível para reenviar o arquivo local de erros", e);
+            return false;
+        }
+        boolean[] naoGravado = new boolean[grupos.size()];
+        for (BulkWriteError erro : erros) {
+            naoGravado[erro.getIndex()] = true;
+            if (erro.getCode() != CHAVE_DUPLICADA) {
+                LOG.warnf("Grupo do arquivo local recusado: E%d %s", erro.getCode(), erro.getMessage());
+                recusados.add(grupos.get(erro.getIndex()));
+            }
+        }
+        for (int i = 0; i < grupos.size(); i++) {
+            if (!naoGravado[i]) {
+                reenviados.increment(grupos.get(i).getList("documento", Object.class).size());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Substitui o arquivo de reenvio pelos grupos recusados, para a próxima tentativa.
+     */
+    private void manter(Path reenvio, List<Document> recusados) throws IOException {
+        Path temporario = reenvio.resolveSibling(reenvio.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporario, StandardCharsets.UTF_8)) {
+            for (Document grupo : recusados) {
+                writer.write(grupo.toJson(JSON));
+                writer.write("\n");
+            }
+        }
+        Files.move(temporario, reenvio, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private ReactiveMongoCollection<Document> colecao() {
+        return mongoClient.getDatabase(DATABASE_NAME)
+            .getCollection(REGISTROS_FALHOS_COLLECTION, Document.class);
+    }
+
+    private record Falha(Registro registro, String erro, long timestamp) {
+    }
+}
@@ -0,0 +1,55 @@
+package br.com.sourcesystems.consumer;
+
+import java.time.Duration;
+import java.util.Locale;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.ShutdownEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+
+/**
+ * Executores nomeados das etapas do consumidor, com concorrência limitada e encerrados com a
+ * aplicação. {@code persist} roda as inserções no MongoDB.
+ */
+@ApplicationScoped
+public class ExecutionStages {
+
+    @ConfigProperty(name = "consumer.executor.persist.max-concurrency", defaultValue = "32")
+    private int concorrenciaPersistencia;
+
+    @ConfigProperty(name = "consumer.executor.persist.threads", defaultValue = "virtual")
+    private String threadsPersistencia;
+
+    @ConfigProperty(name = "consumer.executor.shutdown-timeout", defaultValue = "10s")
+    private Duration tempoLimite;
+
+    private final MeterRegistry meterRegistry;
+
+    private ExecutorServiceWrapper persistencia;
+
+    public ExecutionStages(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        persistencia = ExecutorServiceWrapper.criar("persist", threads(threadsPersistencia), concorrenciaPersistencia,
+            tempoLimite, meterRegistry);
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        persistencia.close();
+    }
+
+    public ExecutorServiceWrapper persistencia() {
+        return persistencia;
+    }
+
+    private static ExecutorServiceWrapper.Threads threads(String valor) {
+        return ExecutorServiceWrapper.Threads.valueOf(valor.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -1,26 +1,43 @@
 package br.com.sourcesystems.consumer;
 
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
-import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
-import org.bson.Document;
+import org.apache.kafka.common.TopicPartition;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.faulttolerance.CircuitBreaker;
 import org.eclipse.microprofile.reactive.messaging.Incoming;
 import org.jboss.logging.Logger;
 
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+
 import io.micrometer.core.annotation.Timed;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.quarkus.mongodb.reactive.ReactiveMongoClient;
+import io.quarkus.runtime.configuration.MemorySize;
 import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import io.smallrye.mutiny.infrastructure.Infrastructure;
+import io.smallrye.reactive.messaging.kafka.KafkaRecord;
+import io.smallrye.reactive.messaging.kafka.KafkaRecordBatch;
 import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 
@@ -29,6 +46,17 @@ public class KafkaConsumer {
 
     private static final Logger LOG = Logger.getLogger(KafkaConsumer.class);
 
+    private static final InsertManyOptions INSERCAO_SEM_ORDEM = new InsertManyOptions().ordered(false);
+
+    private static final int CHAVE_DUPLICADA = 11000;
+
+    /**
+     * Erros por documento que costumam passar sozinhos: troca de primário, desligamento,
+     * rede, conflito de escrita e tempo excedido.
+     */
+    private static final Set<Integer> CODIGOS_TRANSITORIOS = Set.of(
+        6, 7, 50, 89, 91, 112, 189, 262, 9001, 10107, 11600, 11602, 13435, 13436);
+
     private final ReactiveMongoClient mongoClient;
     private Counter batchesSucesso;
     private Counter batchesFalha;
@@ -44,48 +72,154 @@ public class KafkaConsumer {
     @ConfigProperty(name = "consumer.parallelism", defaultValue = "4")
     private int consumerParallelism;
 
+    @ConfigProperty(name = "consumer.write.concurrency.min", defaultValue = "1")
+    private int concorrenciaMinima;
+
+    @ConfigProperty(name = "consumer.write.concurrency.max", defaultValue = "32")
+    private int concorrenciaMaxima;
+
+    @ConfigProperty(name = "consumer.write.latency-target", defaultValue = "500ms")
+    private Duration latenciaAlvo;
+
+    @ConfigProperty(name = "consumer.write.backoff-ratio", defaultValue = "0.75")
+    private double fatorReducao;
+
+    @ConfigProperty(name = "consumer.buffer.max-documents", defaultValue = "5000")
+    private int bufferMaxDocumentos;
+
+    @ConfigProperty(name = "consumer.buffer.max-bytes", defaultValue = "8M")
+    private MemorySize bufferMaxBytes;
+
+    @ConfigProperty(name = "consumer.buffer.max-pending", defaultValue = "20000")
+    private long bufferMaxPendentes;
+
+    @ConfigProperty(name = "consumer.write.max-retries", defaultValue = "3")
+    private int maxTentativas;
+
+    @ConfigProperty(name = "consumer.write.retry-backoff", defaultValue = "200ms")
+    private Duration intervaloTentativa;
+
+    private RegistroWriteBuffer buffer;
+
+    private AdaptiveConcurrencyLimiter concorrencia;
 
-    public KafkaConsumer(ReactiveMongoClient mongoClient, MeterRegistry meterRegistry) {
+    private Timer latenciaEscrita;
+
+    private Counter documentosFalhos;
+
+    private Counter documentosRepetidos;
+
+    private Counter documentosDuplicados;
+
+    private final DeadLetterSink deadLetter;
+
+    private final PartitionPipelines pipelines;
+
+    private final RegistroDeduplicator deduplicador;
+
+    private final BatchLatencyTracker latencias;
+
+    private final ExecutionStages estagios;
+
+    public KafkaConsumer(ReactiveMongoClient mongoClient, MeterRegistry meterRegistry, DeadLetterSink deadLetter,
+            PartitionPipelines pipelines, RegistroDeduplicator deduplicador, BatchLatencyTracker latencias,
+            ExecutionStages estagios) {
         this.mongoClient = mongoClient;
         this.meterRegistry = meterRegistry;
+        this.deadLetter = deadLetter;
+        this.pipelines = pipelines;
+        this.deduplicador = deduplicador;
+        this.latencias = latencias;
+        this.estagios = estagios;
     }
 
     @PostConstruct
     void initMetrics() {
         batchesSucesso = meterRegistry.counter("consumer.batches.sucesso");
         batchesFalha = meterRegistry.counter("consumer.batches.falha");
+        documentosFalhos = meterRegistry.counter("consumer.documentos.falha");
+        documentosRepetidos = meterRegistry.counter("consumer.documentos.repetidos");
+        documentosDuplicados = meterRegistry.counter("consumer.documentos.duplicados");
+        concorrencia = new AdaptiveConcurrencyLimiter(concorrenciaMinima, concorrenciaMaxima, consumerParallelism,
+            latenciaAlvo.toNanos(), fatorReducao, KafkaConsumer::isSobrecarga);
+        meterRegistry.gauge("consumer.write.concurrency.limit", concorrencia, AdaptiveConcurrencyLimiter::limite);
+        meterRegistry.gauge("consumer.write.concurrency.in-flight", concorrencia, AdaptiveConcurrencyLimiter::emUso);
+        meterRegistry.gauge("consumer.write.latency.media-ms", concorrencia, AdaptiveConcurrencyLimiter::latenciaMediaMs);
+        latenciaEscrita = meterRegistry.timer("consumer.write.latency");
+        buffer = new RegistroWriteBuffer(this::processarLote, Infrastructure.getDefaultWorkerPool(),
+            bufferMaxDocumentos, bufferMaxBytes.asLongValue(), delayMs, bufferMaxPendentes);
+        meterRegistry.gauge("consumer.buffer.pendentes", buffer, RegistroWriteBuffer::pendentes);
+        meterRegistry.gauge("consumer.buffer.em-gravacao", buffer, RegistroWriteBuffer::emGravacao);
     }
 
-    
+    /**
+     * Recebe o lote de mensagens de um poll e o divide por partição; cada parte segue pelo
+     * pipeline da sua partição no {@link PartitionPipelines}. O método retorna sem esperar a
+     * gravação, então o próximo poll acontece enquanto o MongoDB grava; o stage devolvido só
+     * segura o consumo quando a fila de alguma partição, o buffer de escrita ou a fila de erros
+     * estão cheios.
+     */
     @Incoming("registros-csv")
-    public CompletionStage<Void> receive(List<List<Registro>> registros) {
-        LOG.info("Total de registros: " + registros.size());
-        LOG.info("KafkaConsumer: recebidos registros, total: " + (registros == null ? "null" : registros.size()));
-        if (registros == null || registros.isEmpty()) {
+    public CompletionStage<Void> receive(KafkaRecordBatch<String, List<Registro>> mensagens) {
+        List<KafkaRecord<String, List<Registro>>> registros = mensagens.getRecords();
+        long recebido = LoteHeaders.agoraMicros();
+        LOG.info("KafkaConsumer: recebidas mensagens, total: " + registros.size());
+        if (registros.isEmpty()) {
+            return mensagens.ack();
+        }
+
+        Map<TopicPartition, List<KafkaRecord<String, List<Registro>>>> porParticao = new LinkedHashMap<>();
+        for (KafkaRecord<String, List<Registro>> registro : registros) {
+            porParticao.computeIfAbsent(new TopicPartition(registro.getTopic(), registro.getPartition()), p -> new ArrayList<>())
+                .add(registro);
+        }
+
+        CompletableFuture<?>[] espacos = porParticao.entrySet().stream()
+            .map(parte -> pipelines.submeter(parte.getKey(), parte.getValue(), lote -> gravar(lote, recebido)).toCompletableFuture())
+            .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(espacos)
+            .thenCompose(livre -> buffer.espacoLivre())
+            .thenCompose(livre -> deadLetter.espacoLivre());
+    }
+
+    /**
+     * Grava os registros das mensagens de uma partição pelo {@link RegistroWriteBuffer} e
+     * confirma cada mensagem ao Kafka só depois que a gravação que a contém terminou. A
+     * latência de cada mensagem desde a leitura no pub vai para o {@link BatchLatencyTracker}.
+     */
+    private CompletionStage<Void> gravar(List<KafkaRecord<String, List<Registro>>> mensagens, long recebido) {
+        List<Registro> registrosUnicos = RegistroBatch.juntar(mensagens.stream()
+            .map(KafkaRecord::getPayload)
+            .filter(Objects::nonNull)
+            .toList());
+
+        if (registrosUnicos.isEmpty()) {
+            mensagens.forEach(KafkaRecord::ack);
             return CompletableFuture.completedFuture(null);
         }
 
-        List<Registro> registrosUnicos = registros.stream()
-            .flatMap(List::stream)
+        List<BatchLatencyTracker.Rastreio> rastreios = mensagens.stream()
+            .map(mensagem -> latencias.iniciar(mensagem, recebido))
             .toList();
-       
-        
-    return processarLote(registrosUnicos)
-        .runSubscriptionOn(Executors.newVirtualThreadPerTaskExecutor())
-        .onItem().invoke(() -> {
-            LOG.info("Lote processado com sucesso");
-            batchesSucesso.increment();
-        })
-        .onFailure().invoke(erro -> {
-            LOG.error("Erro ao processar lote", erro);
-            batchesFalha.increment();
-            registros.forEach(r -> {
-                r.forEach(s -> {
-                    salvarErro(s, erro);
-                });
-            });
-        })
-        .subscribe().asCompletionStage(); 
+        return buffer.adicionar(registrosUnicos).handle((ok, erro) -> {
+            rastreios.forEach(rastreio -> rastreio.concluir(erro));
+            if (erro == null) {
+                LOG.info("Lote processado com sucesso");
+                batchesSucesso.increment();
+                mensagens.forEach(KafkaRecord::ack);
+            } else if (erro instanceof SubLotesDescartadosException) {
+                // registros já gravados ou enviados para registros_falhos pelo processarLote
+                LOG.error("Lote processado com sub-lotes descartados", erro);
+                batchesFalha.increment();
+                mensagens.forEach(KafkaRecord::ack);
+            } else {
+                LOG.error("Erro ao processar lote", erro);
+                batchesFalha.increment();
+                return deadLetter.enviar(registrosUnicos, erro.getMessage())
+                    .whenComplete((enviado, falha) -> mensagens.forEach(m -> m.nack(erro)));
+            }
+            return CompletableFuture.<Void>completedFuture(null);
+        }).thenCompose(Function.identity());
     }
 
     @CircuitBreaker(requestVolumeThreshold = 4, failureRatio = 0.5, delay = 10000)
@@ -96,7 +230,17 @@ public class KafkaConsumer {
             return Uni.createFrom().voidItem();
         }
 
+        return deduplicador.filtrar(registros).onItem().transformToUni(this::inserirSubLotes);
+    }
+
+    private Uni<Void> inserirSubLotes(List<Registro> registros) {
+        if (registros.isEmpty()) {
+            LOG.info("Todos os registros do lote já estavam gravados");
+            return Uni.createFrom().voidItem();
+        }
+
         List<List<Registro>> subLotes = partitionList(registros, batchSize);
+        AtomicInteger descartados = new AtomicInteger();
         LOG.info(registros.size() + " registros recebidos, iniciando processamento em sub-lotes de " + batchSize);
         return Multi.createFrom().iterable(subLotes)
             .onItem().transformToUni(subLote -> {
@@ -104,53 +248,115 @@ public class KafkaConsumer {
                     LOG.warn("Sub-lote vazio recebido, ignorando");
                     return Uni.createFrom().voidItem();
                 }
-                System.out.println("Tipo recebido: " + subLote.getClass());
                 LOG.info("Processando sub-lote de " + subLote.size());
-                List<Document> docs = subLote.stream()
-                    .map(r -> new Document()
-                        .append("nome", r.nome())
-                        .append("email", r.email())
-                        .append("telefone", r.telefone())
-                        .append("cpf", r.cpf())
-                        .append("dataLeitura", r.dataLeitura()))
-                        .collect(Collectors.toList());
-       
-                return mongoClient.getDatabase("arquivos")
-                    .getCollection("registros", Document.class)
-                    .insertMany(docs)
+                // cada Registro é gravado em BSON uma única vez pelo RegistroCodec
+                return inserir(subLote, 0)
                     .onItem().invoke(() -> batchesSucesso.increment())
-                    .onFailure().invoke(e -> {
+                    .onFailure().recoverWithUni(e -> {
+                        // falha do comando inteiro: não há como saber quais documentos entraram
+                        LOG.error("Erro ao inserir sublote", e);
                         batchesFalha.increment();
-                        subLote.forEach(r -> salvarErro(r, e));
-                    })
-                    .replaceWithVoid();
-            }).merge(consumerParallelism).runSubscriptionOn(Executors.newVirtualThreadPerTaskExecutor())  // Espera o último elemento emitido (Uni<Void>)
-            .collect().last().replaceWithVoid();
+                        descartados.incrementAndGet();
+                        return Uni.createFrom().completionStage(deadLetter.enviar(subLote, e.getMessage()));
+                    });
+            }).merge(concorrenciaMaxima).runSubscriptionOn(estagios.persistencia())  // Espera o último elemento emitido (Uni<Void>)
+            .collect().last()
+            .onItem().transformToUni(ignored -> descartados.get() == 0
+                ? Uni.createFrom().voidItem()
+                : Uni.createFrom().<Void>failure(new SubLotesDescartadosException(descartados.get())));
     }
 
+    /**
+     * Insere sem ordem, para que um documento inválido não impeça os seguintes. Dos erros por
+     * documento, os transitórios são repetidos só com os documentos que falharam, até
+     * {@code consumer.write.max-retries} vezes; chave duplicada no índice único significa
+     * registro já gravado e é descartada; os demais vão para {@code registros_falhos}.
+     */
+    private Uni<Void> inserir(List<Registro> documentos, int tentativa) {
+        return concorrencia.executar(() -> {
+                Timer.Sample amostra = Timer.start(meterRegistry);
+                return mongoClient.getDatabase("arquivos")
+                    .getCollection("registros", Registro.class)
+                    .insertMany(documentos, INSERCAO_SEM_ORDEM)
+                    .onTermination().invoke(() -> amostra.stop(latenciaEscrita));
+            })
+            .replaceWithVoid()
+            .onFailure(MongoBulkWriteException.class)
+            .recoverWithUni(e -> tratarErrosEscrita(documentos, (MongoBulkWriteException) e, tentativa));
+    }
+
+    private Uni<Void> tratarErrosEscrita(List<Registro> documentos, MongoBulkWriteException e, int tentativa) {
+        if (e.getWriteConcernError() != null) {
+            LOG.warnf("Write concern não atendido ao inserir sub-lote: %s", e.getWriteConcernError().getMessage());
+        }
+        List<Registro> repetir = new ArrayList<>();
+        Map<String, List<Registro>> descartar = new LinkedHashMap<>();
+        int duplicados = 0;
+        for (BulkWriteError erro : e.getWriteErrors()) {
+            Registro registro = documentos.get(erro.getIndex());
+            if (erro.getCode() == CHAVE_DUPLICADA) {
+                duplicados++;
+            } else if (tentativa < maxTentativas && isTransitorio(erro.getCode())) {
+                repetir.add(registro);
+            } else {
+                documentosFalhos.increment();
+                descartar.computeIfAbsent("E" + erro.getCode() + " " + erro.getMessage(), m -> new ArrayList<>()).add(registro);
+            }
+        }
+        documentosDuplicados.increment(duplicados);
+        LOG.warnf("%d de %d documentos com erro de escrita, %d já gravados, %d serão repetidos",
+            e.getWriteErrors().size(), documentos.size(), duplicados, repetir.size());
+        Uni<Void> descarte = Multi.createFrom().iterable(descartar.entrySet())
+            .onItem().transformToUniAndConcatenate(grupo -> Uni.createFrom().completionStage(deadLetter.enviar(grupo.getValue(), grupo.getKey())))
+            .collect().last()
+            .replaceWithVoid();
+        if (repetir.isEmpty()) {
+            return descarte;
+        }
+        documentosRepetidos.increment(repetir.size());
+        return descarte
+            .onItem().delayIt().by(intervaloTentativa.multipliedBy(1L << tentativa))
+            .chain(() -> inserir(repetir, tentativa + 1));
+    }
+
+    static boolean isTransitorio(int codigo) {
+        return CODIGOS_TRANSITORIOS.contains(codigo);
+    }
+
+    /**
+     * Erros que indicam MongoDB sobrecarregado ou instável, e reduzem a concorrência de escrita.
+     * Erros de dados (chave duplicada, validação) não entram.
+     */
+    static boolean isSobrecarga(Throwable erro) {
+        if (erro instanceof MongoBulkWriteException bulk) {
+            return bulk.getWriteErrors().stream().anyMatch(e -> isTransitorio(e.getCode()));
+        }
+        if (erro instanceof MongoTimeoutException || erro instanceof MongoSocketException
+                || erro instanceof MongoExecutionTimeoutException) {
+            return true;
+        }
+        return erro instanceof MongoException mongo && isTransitorio(mongo.getCode());
+    }
+
+    /**
+     * Divide em visões de até {@code size} registros, sem copiar; com lotes em colunas cada
+     * {@link Registro} só é montado quando o driver o codifica.
+     */
     private List<List<Registro>> partitionList(List<Registro> list, int size) {
         List<List<Registro>> parts = new ArrayList<>();
         for (int i = 0; i < list.size(); i += size) {
-            parts.add(new ArrayList<>(list.subList(i, Math.min(i + size, list.size())))); // cria cópia
+            parts.add(list.subList(i, Math.min(i + size, list.size())));
         }
         return parts;
     }
 
-    private void salvarErro(Registro sub, Throwable erro) {
-        LOG.error("Erro ao inserir sublote", erro);
-
-        Document errorDoc = new Document()
-            .append("erro", erro.getMessage())
-            .append("documento", sub)
-            .append("timestamp", System.currentTimeMillis());
-
-        mongoClient.getDatabase("arquivos")
-            .getCollection("registros_falhos", Document.class)
-            .insertOne(errorDoc)
-            .subscribe().with(
-                success -> LOG.info("Sub-lote com erro armazenado para reprocessamento"),
-                fail -> LOG.error("Erro ao salvar o sub-lote com erro", fail)
-            );
-    }
+    /**
+     * Indica que os sub-lotes que falharam já foram enviados para {@code registros_falhos}.
+     */
+    static class SubLotesDescartadosException extends RuntimeException {
 
-}
\ No newline at end of file
+        SubLotesDescartadosException(int subLotes) {
+            super(subLotes + " sub-lote(s) enviados para registros_falhos");
+        }
+    }
+}
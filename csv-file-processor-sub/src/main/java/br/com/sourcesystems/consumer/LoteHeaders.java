@@ -0,0 +1,64 @@
+package br.com.sourcesystems.consumer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * Headers Kafka escritos pelo pub em cada mensagem de um lote lido de arquivo: id e nome do
+ * arquivo, primeiro e último registro da mensagem e quantos ela tem (as linhas de uma mensagem
+ * roteada por chave não são contíguas), instante da leitura e do envio ao produtor,
+ * além do {@code traceparent} do W3C. Os valores são texto UTF-8.
+ *
+ * Os instantes são microssegundos desde a epoch, no mesmo relógio de {@link #agoraMicros()}:
+ * monotônico e ancorado na hora do sistema na carga da classe. Entre pub e sub a diferença
+ * inclui o desvio entre os relógios das máquinas.
+ */
+public final class LoteHeaders {
+
+    public static final String ARQUIVO_ID = "x-arquivo-id";
+
+    public static final String ARQUIVO_NOME = "x-arquivo-nome";
+
+    public static final String REGISTRO_INICIAL = "x-registro-inicial";
+
+    public static final String REGISTRO_FINAL = "x-registro-final";
+
+    public static final String REGISTROS = "x-registros";
+
+    public static final String INGESTAO_US = "x-ingestao-us";
+
+    public static final String ENVIO_US = "x-envio-us";
+
+    private static final long BASE_MICROS = ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+
+    private static final long BASE_NANOS = System.nanoTime();
+
+    private LoteHeaders() {
+    }
+
+    public static long agoraMicros() {
+        return BASE_MICROS + (System.nanoTime() - BASE_NANOS) / 1000;
+    }
+
+    static String texto(Headers headers, String nome) {
+        Header header = headers == null ? null : headers.lastHeader(nome);
+        return header == null || header.value() == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    /** Valor numérico do header, ou -1 quando ausente ou inválido. */
+    static long numero(Headers headers, String nome) {
+        String valor = texto(headers, nome);
+        if (valor == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(valor);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
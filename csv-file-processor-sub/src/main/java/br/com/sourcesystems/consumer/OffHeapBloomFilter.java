@@ -0,0 +1,96 @@
+package br.com.sourcesystems.consumer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Filtro de Bloom sobre um {@link ByteBuffer} direto, fora do heap, dimensionado pelo número
+ * esperado de chaves e pela taxa de falsos positivos aceita. Os bits são marcados com
+ * operações atômicas em palavras de 64 bits, então várias threads podem adicionar e consultar
+ * ao mesmo tempo sem lock.
+ *
+ * As posições vêm de dois hashes de 64 bits combinados ({@code h1 + i * h2}), o que mantém a
+ * taxa de falsos positivos de {@code k} funções independentes.
+ */
+public class OffHeapBloomFilter {
+
+    private static final VarHandle PALAVRAS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /** Maior buffer direto alocável, arredondado para palavras de 64 bits. */
+    private static final long MAX_BYTES = Integer.MAX_VALUE & ~7L;
+
+    private final ByteBuffer bits;
+    private final long totalBits;
+    private final int funcoes;
+
+    public OffHeapBloomFilter(long chavesEsperadas, double taxaFalsoPositivo) {
+        if (chavesEsperadas < 1 || taxaFalsoPositivo <= 0 || taxaFalsoPositivo >= 1) {
+            throw new IllegalArgumentException("Parâmetros do filtro inválidos: chaves=" + chavesEsperadas
+                + ", taxa=" + taxaFalsoPositivo);
+        }
+        double ideal = -chavesEsperadas * Math.log(taxaFalsoPositivo) / (Math.log(2) * Math.log(2));
+        long bytes = Math.min(MAX_BYTES, Math.max(8, ((long) Math.ceil(ideal) + 63) / 64 * 8));
+        this.bits = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+        this.totalBits = bytes * 8;
+        this.funcoes = Math.max(1, (int) Math.round((double) totalBits / chavesEsperadas * Math.log(2)));
+    }
+
+    /**
+     * Marca a chave. Devolve {@code true} se algum bit estava desligado, ou seja, a chave
+     * certamente não tinha sido adicionada antes.
+     */
+    public boolean adicionar(String chave) {
+        long h1 = hash(chave);
+        long h2 = misturar(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        boolean nova = false;
+        for (int i = 0; i < funcoes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, totalBits);
+            long mascara = 1L << (bit & 63);
+            long anterior = (long) PALAVRAS.getAndBitwiseOr(bits, (int) ((bit >>> 6) << 3), mascara);
+            nova |= (anterior & mascara) == 0;
+        }
+        return nova;
+    }
+
+    public boolean talvezContem(String chave) {
+        long h1 = hash(chave);
+        long h2 = misturar(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < funcoes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, totalBits);
+            long palavra = (long) PALAVRAS.getVolatile(bits, (int) ((bit >>> 6) << 3));
+            if ((palavra & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long bytes() {
+        return bits.capacity();
+    }
+
+    public int funcoes() {
+        return funcoes;
+    }
+
+    /** FNV-1a de 64 bits sobre os chars, seguido da mistura final do MurmurHash3. */
+    private static long hash(String chave) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < chave.length(); i++) {
+            h ^= chave.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        return misturar(h);
+    }
+
+    private static long misturar(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
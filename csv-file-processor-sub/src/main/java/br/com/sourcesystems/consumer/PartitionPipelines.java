@@ -0,0 +1,158 @@
+package br.com.sourcesystems.consumer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.smallrye.common.annotation.Identifier;
+import io.smallrye.reactive.messaging.kafka.KafkaConsumerRebalanceListener;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Um pipeline por partição atribuída ao consumidor. Os lotes de uma partição são gravados
+ * na ordem em que chegaram, um após o outro; partições diferentes avançam de forma
+ * independente, então uma partição lenta não segura as demais enquanto a sua fila tiver
+ * espaço ({@code consumer.pipeline.max-pending-batches}).
+ *
+ * Os pipelines são criados na atribuição de partições e, na revogação, o consumidor espera
+ * os lotes já aceitos terminarem (até {@code consumer.pipeline.revoke-timeout}), para que o
+ * novo dono da partição não grave os mesmos registros em paralelo. Confirmações que chegarem
+ * depois do commit da revogação resultam em reentrega, tratada como qualquer duplicata.
+ */
+@ApplicationScoped
+@Identifier(PartitionPipelines.NOME)
+public class PartitionPipelines implements KafkaConsumerRebalanceListener {
+
+    public static final String NOME = "registros-csv.pipelines";
+
+    private static final Logger LOG = Logger.getLogger(PartitionPipelines.class);
+
+    @ConfigProperty(name = "consumer.pipeline.max-pending-batches", defaultValue = "8")
+    private int maxPendentes;
+
+    @ConfigProperty(name = "consumer.pipeline.revoke-timeout", defaultValue = "10s")
+    private Duration tempoRevogacao;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<TopicPartition, Pipeline> pipelines = new ConcurrentHashMap<>();
+
+    public PartitionPipelines(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void initMetrics() {
+        meterRegistry.gauge("consumer.pipeline.particoes", pipelines, Map::size);
+        meterRegistry.gauge("consumer.pipeline.pendentes", pipelines,
+            p -> p.values().stream().mapToInt(Pipeline::pendentes).sum());
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        for (TopicPartition particao : partitions) {
+            pipelines.computeIfAbsent(particao, Pipeline::new);
+        }
+        LOG.infof("Partições atribuídas: %s (pipelines ativos: %d)", partitions, pipelines.size());
+    }
+
+    @Override
+    public void onPartitionsRevoked(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        List<CompletableFuture<Void>> pendentes = new ArrayList<>();
+        for (TopicPartition particao : partitions) {
+            Pipeline pipeline = pipelines.remove(particao);
+            if (pipeline != null) {
+                pendentes.add(pipeline.fim());
+            }
+        }
+        try {
+            CompletableFuture.allOf(pendentes.toArray(CompletableFuture[]::new))
+                .get(tempoRevogacao.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOG.warnf("Lotes das partições revogadas %s não terminaram em %s; serão reentregues ao novo dono",
+                partitions, tempoRevogacao);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOG.error("Erro ao encerrar pipelines das partições revogadas " + partitions, e);
+        }
+        LOG.infof("Partições revogadas: %s (pipelines ativos: %d)", partitions, pipelines.size());
+    }
+
+    /**
+     * Enfileira o lote no pipeline da partição; {@code gravacao} só é chamada depois que o lote
+     * anterior da mesma partição terminou. O stage devolvido completa quando a fila da partição
+     * tem espaço para o próximo lote.
+     */
+    public <T> CompletionStage<Void> submeter(TopicPartition particao, T lote, Function<T, CompletionStage<Void>> gravacao) {
+        return pipelines.computeIfAbsent(particao, Pipeline::new).submeter(() -> gravacao.apply(lote));
+    }
+
+    private final class Pipeline {
+
+        private final TopicPartition particao;
+        private CompletableFuture<Void> cauda = CompletableFuture.completedFuture(null);
+        private int pendentes;
+        private CompletableFuture<Void> espaco;
+
+        Pipeline(TopicPartition particao) {
+            this.particao = particao;
+        }
+
+        synchronized CompletionStage<Void> submeter(Supplier<CompletionStage<Void>> gravacao) {
+            pendentes++;
+            cauda = cauda
+                .thenCompose(anterior -> gravacao.get())
+                .exceptionally(erro -> {
+                    LOG.error("Erro no pipeline da partição " + particao, erro);
+                    return null;
+                })
+                .whenComplete((ok, erro) -> concluido());
+            if (pendentes < maxPendentes) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if (espaco == null) {
+                espaco = new CompletableFuture<>();
+            }
+            return espaco;
+        }
+
+        synchronized int pendentes() {
+            return pendentes;
+        }
+
+        synchronized CompletableFuture<Void> fim() {
+            return cauda;
+        }
+
+        private void concluido() {
+            CompletableFuture<Void> liberado = null;
+            synchronized (this) {
+                pendentes--;
+                if (espaco != null && pendentes < maxPendentes) {
+                    liberado = espaco;
+                    espaco = null;
+                }
+            }
+            if (liberado != null) {
+                liberado.complete(null);
+            }
+        }
+    }
+}
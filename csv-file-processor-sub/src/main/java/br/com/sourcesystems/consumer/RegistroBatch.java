@@ -0,0 +1,160 @@
+package br.com.sourcesystems.consumer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Lote de registros em colunas lido do formato binário do pub: os campos de texto continuam no
+ * próprio payload da mensagem, referenciados por início e tamanho de cada célula (tamanho -1
+ * para null), e {@code dataLeitura} é guardada uma vez por lote quando todas as linhas têm a
+ * mesma, ou em micros por linha quando não.
+ *
+ * É um {@code List<Registro>} imutável: {@link #get(int)} monta o {@link Registro} a cada
+ * chamada, então o registro só existe como objeto enquanto é gravado. {@link #subList(int, int)}
+ * não copia. {@link #juntar(List)} encadeia os lotes de várias mensagens sem copiar.
+ */
+public final class RegistroBatch extends AbstractList<Registro> implements RandomAccess {
+
+    public static final int NOME = 0;
+    public static final int EMAIL = 1;
+    public static final int TELEFONE = 2;
+    public static final int CPF = 3;
+    public static final int CAMPOS = 4;
+
+    private final byte[] dados;
+    private final int[] inicios;
+    private final int[] tamanhos;
+    private final LocalDateTime dataLeitura;
+    private final long[] datasMicros;
+    private final int primeira;
+    private final int quantidade;
+
+    /**
+     * Lote sobre um payload já decodificado; os arrays passam a pertencer ao lote.
+     *
+     * @param datasMicros micros de época UTC por linha ({@link Long#MIN_VALUE} para null), ou
+     *                    {@code null} quando todas as linhas têm {@code dataLeitura}
+     */
+    public RegistroBatch(byte[] dados, int[] inicios, int[] tamanhos, LocalDateTime dataLeitura, long[] datasMicros) {
+        this(dados, inicios, tamanhos, dataLeitura, datasMicros, 0, tamanhos.length / CAMPOS);
+    }
+
+    private RegistroBatch(byte[] dados, int[] inicios, int[] tamanhos, LocalDateTime dataLeitura, long[] datasMicros,
+            int primeira, int quantidade) {
+        this.dados = dados;
+        this.inicios = inicios;
+        this.tamanhos = tamanhos;
+        this.dataLeitura = dataLeitura;
+        this.datasMicros = datasMicros;
+        this.primeira = primeira;
+        this.quantidade = quantidade;
+    }
+
+    @Override
+    public Registro get(int linha) {
+        if (linha < 0 || linha >= quantidade) {
+            throw new IndexOutOfBoundsException("Linha " + linha + " fora de 0.." + quantidade);
+        }
+        return new Registro(texto(linha, NOME), texto(linha, EMAIL), texto(linha, TELEFONE), texto(linha, CPF),
+            data(linha));
+    }
+
+    @Override
+    public int size() {
+        return quantidade;
+    }
+
+    @Override
+    public RegistroBatch subList(int de, int ate) {
+        if (de < 0 || ate > quantidade || de > ate) {
+            throw new IndexOutOfBoundsException("Faixa " + de + ".." + ate + " fora de 0.." + quantidade);
+        }
+        return new RegistroBatch(dados, inicios, tamanhos, dataLeitura, datasMicros, primeira + de, ate - de);
+    }
+
+    public String texto(int linha, int campo) {
+        int celula = (primeira + linha) * CAMPOS + campo;
+        int tamanho = tamanhos[celula];
+        return tamanho < 0 ? null : new String(dados, inicios[celula], tamanho, StandardCharsets.UTF_8);
+    }
+
+    /** Tamanho em bytes da célula, ou -1 quando o valor é null. */
+    public int tamanho(int linha, int campo) {
+        return tamanhos[(primeira + linha) * CAMPOS + campo];
+    }
+
+    /** Soma dos tamanhos em bytes dos campos de texto das linhas do lote. */
+    public long bytesDados() {
+        long total = 0;
+        int fim = (primeira + quantidade) * CAMPOS;
+        for (int celula = primeira * CAMPOS; celula < fim; celula++) {
+            total += Math.max(0, tamanhos[celula]);
+        }
+        return total;
+    }
+
+    private LocalDateTime data(int linha) {
+        if (datasMicros == null) {
+            return dataLeitura;
+        }
+        long micros = datasMicros[primeira + linha];
+        return micros == Long.MIN_VALUE ? null : LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+            (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+    /**
+     * Visão única, sem cópia, das listas na ordem dada. Uma lista sozinha é devolvida como está.
+     */
+    public static List<Registro> juntar(List<? extends List<Registro>> partes) {
+        if (partes.size() == 1) {
+            return partes.get(0);
+        }
+        return new Juncao(partes);
+    }
+
+    private static final class Juncao extends AbstractList<Registro> implements RandomAccess {
+
+        private final List<? extends List<Registro>> partes;
+        private final int[] limites;
+
+        Juncao(List<? extends List<Registro>> partes) {
+            this.partes = partes;
+            this.limites = new int[partes.size()];
+            int total = 0;
+            for (int i = 0; i < partes.size(); i++) {
+                total += partes.get(i).size();
+                limites[i] = total;
+            }
+        }
+
+        @Override
+        public Registro get(int indice) {
+            if (indice < 0 || indice >= size()) {
+                throw new IndexOutOfBoundsException("Índice " + indice + " fora de 0.." + size());
+            }
+            // primeira parte cujo limite acumulado passa do índice
+            int baixo = 0;
+            int alto = limites.length - 1;
+            while (baixo < alto) {
+                int meio = (baixo + alto) >>> 1;
+                if (limites[meio] > indice) {
+                    alto = meio;
+                } else {
+                    baixo = meio + 1;
+                }
+            }
+            int parte = baixo;
+            int base = parte == 0 ? 0 : limites[parte - 1];
+            return partes.get(parte).get(indice - base);
+        }
+
+        @Override
+        public int size() {
+            return limites.length == 0 ? 0 : limites[limites.length - 1];
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package br.com.sourcesystems.consumer;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+
+/**
+ * Grava {@link Registro} direto no writer BSON do driver, sem montar um {@code Document}
+ * intermediário. O documento gerado é o mesmo que o {@code Document} usado antes:
+ * {@code _id} (quando é o documento da coleção), {@code nome}, {@code email}, {@code telefone},
+ * {@code cpf} e {@code dataLeitura} como data BSON em UTC, com null explícito para campos ausentes.
+ */
+public class RegistroCodec implements Codec<Registro> {
+
+    @Override
+    public void encode(BsonWriter writer, Registro registro, EncoderContext encoderContext) {
+        writer.writeStartDocument();
+        if (encoderContext.isEncodingCollectibleDocument()) {
+            writer.writeObjectId("_id", new ObjectId());
+        }
+        escreverTexto(writer, "nome", registro.nome());
+        escreverTexto(writer, "email", registro.email());
+        escreverTexto(writer, "telefone", registro.telefone());
+        escreverTexto(writer, "cpf", registro.cpf());
+        if (registro.dataLeitura() == null) {
+            writer.writeNull("dataLeitura");
+        } else {
+            writer.writeDateTime("dataLeitura", registro.dataLeitura().toInstant(ZoneOffset.UTC).toEpochMilli());
+        }
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public Registro decode(BsonReader reader, DecoderContext decoderContext) {
+        String nome = null;
+        String email = null;
+        String telefone = null;
+        String cpf = null;
+        LocalDateTime dataLeitura = null;
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String campo = reader.readName();
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+                continue;
+            }
+            switch (campo) {
+                case "nome" -> nome = reader.readString();
+                case "email" -> email = reader.readString();
+                case "telefone" -> telefone = reader.readString();
+                case "cpf" -> cpf = reader.readString();
+                case "dataLeitura" -> dataLeitura = LocalDateTime.ofInstant(Instant.ofEpochMilli(reader.readDateTime()), ZoneOffset.UTC);
+                default -> reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        return new Registro(nome, email, telefone, cpf, dataLeitura);
+    }
+
+    @Override
+    public Class<Registro> getEncoderClass() {
+        return Registro.class;
+    }
+
+    private static void escreverTexto(BsonWriter writer, String campo, String valor) {
+        if (valor == null) {
+            writer.writeNull(campo);
+        } else {
+            writer.writeString(campo, valor);
+        }
+    }
+}
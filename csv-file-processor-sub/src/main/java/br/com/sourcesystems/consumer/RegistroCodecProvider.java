@@ -0,0 +1,23 @@
+package br.com.sourcesystems.consumer;
+
+import org.bson.codecs.Codec;
+import org.bson.codecs.configuration.CodecProvider;
+import org.bson.codecs.configuration.CodecRegistry;
+
+/**
+ * Registra o {@link RegistroCodec} no cliente MongoDB; o Quarkus descobre os
+ * {@code CodecProvider} da aplicação automaticamente.
+ */
+public class RegistroCodecProvider implements CodecProvider {
+
+    private static final RegistroCodec CODEC = new RegistroCodec();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Codec<T> get(Class<T> clazz, CodecRegistry registry) {
+        if (clazz == Registro.class) {
+            return (Codec<T>) CODEC;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,304 @@
+package br.com.sourcesystems.consumer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.mongodb.FindOptions;
+import io.quarkus.mongodb.reactive.ReactiveMongoClient;
+import io.quarkus.mongodb.reactive.ReactiveMongoCollection;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Uni;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+
+/**
+ * Descarta registros que já estão em {@code registros} antes do {@code insertMany}.
+ *
+ * A chave natural é formada pelos campos de {@code consumer.dedup.key-fields}. Um índice único
+ * parcial sobre esses campos (só documentos com todos eles strings não vazias) garante a
+ * unicidade no banco; na frente dele, um {@link OffHeapBloomFilter} com as chaves já vistas, reconstruído a
+ * partir da coleção na inicialização. Chave ausente do filtro é certamente nova e vai direto
+ * para a gravação; chave presente é confirmada com uma única consulta por lote no índice, e só
+ * os falsos positivos seguem para gravação. Registros com algum campo da chave ausente, vazio ou
+ * só com espaços não têm chave e não são deduplicados; o índice parcial não consegue excluir
+ * valores só com espaços, que continuam sujeitos a ele.
+ *
+ * Fica desligada por padrão e não tem chave padrão: linhas distintas do CSV podem repetir
+ * qualquer campo isolado (o mesmo CPF em dois cadastros, por exemplo), e a chave errada descarta
+ * dados legítimos. Com {@code consumer.dedup.enabled=true}, {@code consumer.dedup.key-fields} é
+ * obrigatório e precisa ser uma chave natural de verdade do arquivo. A origem nos headers
+ * (arquivo e faixa de registros) não serve de chave: depois do roteamento por partição, as
+ * linhas de uma mensagem não são contíguas.
+ *
+ * Enquanto o filtro é reconstruído, uma chave ausente dele pode já estar no banco; nesse caso o
+ * índice rejeita o documento com chave duplicada, tratada como registro já gravado.
+ */
+@ApplicationScoped
+public class RegistroDeduplicator {
+
+    private static final Logger LOG = Logger.getLogger(RegistroDeduplicator.class);
+
+    private static final String DATABASE_NAME = "arquivos";
+    private static final String REGISTROS_COLLECTION = "registros";
+    private static final String INDICE = "registros_chave_natural";
+    private static final char SEPARADOR = '\u001F';
+
+    private static final Map<String, Function<Registro, String>> CAMPOS = Map.of(
+        "nome", Registro::nome,
+        "email", Registro::email,
+        "telefone", Registro::telefone,
+        "cpf", Registro::cpf);
+
+    @ConfigProperty(name = "consumer.dedup.enabled", defaultValue = "false")
+    private boolean habilitado;
+
+    @ConfigProperty(name = "consumer.dedup.key-fields")
+    private Optional<List<String>> camposConfigurados;
+
+    private List<String> campos;
+
+    @ConfigProperty(name = "consumer.dedup.expected-records", defaultValue = "10000000")
+    private long chavesEsperadas;
+
+    @ConfigProperty(name = "consumer.dedup.false-positive-rate", defaultValue = "0.01")
+    private double taxaFalsoPositivo;
+
+    @ConfigProperty(name = "consumer.dedup.rebuild-batch-size", defaultValue = "10000")
+    private int loteReconstrucao;
+
+    private final ReactiveMongoClient mongoClient;
+
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicLong consultas = new AtomicLong();
+
+    private final AtomicLong positivos = new AtomicLong();
+
+    private List<Function<Registro, String>> extratores;
+
+    private OffHeapBloomFilter filtro;
+
+    private Counter descartados;
+
+    private Counter falsosPositivos;
+
+    public RegistroDeduplicator(ReactiveMongoClient mongoClient, MeterRegistry meterRegistry) {
+        this.mongoClient = mongoClient;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        if (!habilitado) {
+            return;
+        }
+        campos = camposConfigurados.filter(lista -> !lista.isEmpty())
+            .orElseThrow(() -> new IllegalArgumentException(
+                "consumer.dedup.key-fields é obrigatório com consumer.dedup.enabled=true"));
+        extratores = campos.stream()
+            .map(campo -> {
+                Function<Registro, String> extrator = CAMPOS.get(campo);
+                if (extrator == null) {
+                    throw new IllegalArgumentException("Campo de chave desconhecido em consumer.dedup.key-fields: " + campo);
+                }
+                return extrator;
+            })
+            .toList();
+        filtro = new OffHeapBloomFilter(chavesEsperadas, taxaFalsoPositivo);
+        LOG.infof("Filtro de duplicatas: chave %s, %d bytes fora do heap, %d funções de hash",
+            campos, filtro.bytes(), filtro.funcoes());
+
+        descartados = meterRegistry.counter("consumer.dedup.descartados");
+        falsosPositivos = meterRegistry.counter("consumer.dedup.falsos-positivos");
+        meterRegistry.gauge("consumer.dedup.filtro.bytes", filtro, OffHeapBloomFilter::bytes);
+        meterRegistry.gauge("consumer.dedup.filtro.consultas", consultas, AtomicLong::get);
+        meterRegistry.gauge("consumer.dedup.filtro.taxa-acerto", this, RegistroDeduplicator::taxaAcerto);
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        if (!habilitado) {
+            return;
+        }
+        criarIndice()
+            .chain(this::reconstruir)
+            .subscribe().with(
+                total -> LOG.infof("Filtro de duplicatas reconstruído com %d chaves de %s", total, REGISTROS_COLLECTION),
+                erro -> LOG.error("Erro ao reconstruir o filtro de duplicatas; duplicatas serão barradas só pelo índice", erro));
+    }
+
+    /**
+     * Devolve os registros do lote que ainda não estão gravados, sem repetições dentro do
+     * próprio lote.
+     */
+    public Uni<List<Registro>> filtrar(List<Registro> registros) {
+        if (!habilitado) {
+            return Uni.createFrom().item(registros);
+        }
+        List<Registro> novos = new ArrayList<>(registros.size());
+        Map<String, Registro> vistos = new LinkedHashMap<>();
+        Map<String, Registro> suspeitos = new LinkedHashMap<>();
+        long repetidos = 0;
+        for (Registro registro : registros) {
+            String chave = chave(registro);
+            if (chave == null) {
+                novos.add(registro);
+            } else if (vistos.putIfAbsent(chave, registro) != null) {
+                repetidos++;
+            } else if (filtro.adicionar(chave)) {
+                novos.add(registro);
+            } else {
+                suspeitos.put(chave, registro);
+            }
+        }
+        consultas.addAndGet(vistos.size());
+        positivos.addAndGet(suspeitos.size());
+        descartados.increment(repetidos);
+        if (suspeitos.isEmpty()) {
+            return Uni.createFrom().item(novos);
+        }
+        return existentes(suspeitos.values()).map(existentes -> {
+            int falsos = 0;
+            for (Map.Entry<String, Registro> suspeito : suspeitos.entrySet()) {
+                if (!existentes.contains(suspeito.getKey())) {
+                    novos.add(suspeito.getValue());
+                    falsos++;
+                }
+            }
+            falsosPositivos.increment(falsos);
+            descartados.increment(suspeitos.size() - falsos);
+            return novos;
+        });
+    }
+
+    /** Fração das chaves consultadas que o filtro indicou como já vistas. */
+    double taxaAcerto() {
+        long total = consultas.get();
+        return total == 0 ? 0 : (double) positivos.get() / total;
+    }
+
+    private Uni<Set<String>> existentes(Collection<Registro> suspeitos) {
+        Bson filtroConsulta;
+        if (campos.size() == 1) {
+            Function<Registro, String> extrator = extratores.get(0);
+            filtroConsulta = Filters.in(campos.get(0), suspeitos.stream().map(extrator).toList());
+        } else {
+            filtroConsulta = Filters.or(suspeitos.stream().map(this::filtroChave).toList());
+        }
+        FindOptions opcoes = new FindOptions()
+            .filter(filtroConsulta)
+            .projection(Projections.fields(Projections.include(campos), Projections.excludeId()));
+        return getCollection().find(opcoes)
+            .map(this::chave)
+            .select().where(Objects::nonNull)
+            .collect().with(Collectors.toCollection(HashSet::new));
+    }
+
+    private Uni<String> criarIndice() {
+        IndexOptions opcoes = new IndexOptions()
+            .name(INDICE)
+            .unique(true)
+            .partialFilterExpression(preenchidos());
+        return getCollection().createIndex(Indexes.ascending(campos), opcoes)
+            .onFailure().recoverWithItem(erro -> {
+                LOG.error("Não foi possível criar o índice único " + INDICE + " em " + REGISTROS_COLLECTION
+                    + " (há duplicatas gravadas ou um índice com o mesmo nome e outras opções?)", erro);
+                return INDICE;
+            });
+    }
+
+    private Uni<Long> reconstruir(String indice) {
+        FindOptions opcoes = new FindOptions()
+            .filter(preenchidos())
+            .projection(Projections.fields(Projections.include(campos), Projections.excludeId()))
+            .batchSize(loteReconstrucao);
+        return getCollection().find(opcoes)
+            .map(this::chave)
+            .select().where(Objects::nonNull)
+            .onItem().invoke(filtro::adicionar)
+            .collect().with(Collectors.counting());
+    }
+
+    /**
+     * Documentos com todos os campos da chave preenchidos: strings, e não vazias.
+     */
+    private Bson preenchidos() {
+        List<Bson> condicoes = new ArrayList<>(campos.size() * 2);
+        for (String campo : campos) {
+            condicoes.add(Filters.type(campo, BsonType.STRING));
+            condicoes.add(Filters.gt(campo, ""));
+        }
+        return Filters.and(condicoes);
+    }
+
+    private Bson filtroChave(Registro registro) {
+        List<Bson> condicoes = new ArrayList<>(campos.size());
+        for (int i = 0; i < campos.size(); i++) {
+            condicoes.add(Filters.eq(campos.get(i), extratores.get(i).apply(registro)));
+        }
+        return Filters.and(condicoes);
+    }
+
+    /**
+     * Chave do registro, ou {@code null} se algum campo dela estiver ausente ou em branco.
+     */
+    private String chave(Registro registro) {
+        if (extratores.size() == 1) {
+            String valor = extratores.get(0).apply(registro);
+            return emBranco(valor) ? null : valor;
+        }
+        StringJoiner chave = new StringJoiner(String.valueOf(SEPARADOR));
+        for (Function<Registro, String> extrator : extratores) {
+            String valor = extrator.apply(registro);
+            if (emBranco(valor)) {
+                return null;
+            }
+            chave.add(valor);
+        }
+        return chave.toString();
+    }
+
+    private String chave(Document documento) {
+        StringJoiner chave = new StringJoiner(String.valueOf(SEPARADOR));
+        for (String campo : campos) {
+            String valor = documento.getString(campo);
+            if (emBranco(valor)) {
+                return null;
+            }
+            chave.add(valor);
+        }
+        return chave.toString();
+    }
+
+    private static boolean emBranco(String valor) {
+        return valor == null || valor.isBlank();
+    }
+
+    private ReactiveMongoCollection<Document> getCollection() {
+        return mongoClient.getDatabase(DATABASE_NAME).getCollection(REGISTROS_COLLECTION, Document.class);
+    }
+}
@@ -0,0 +1,170 @@
+package br.com.sourcesystems.consumer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import io.smallrye.mutiny.Uni;
+
+/**
+ * Acumula os registros de várias mensagens do Kafka e os grava juntos. A gravação acontece
+ * quando o buffer atinge {@code maxDocumentos} ou {@code maxBytes} (estimados pelo tamanho
+ * dos campos), ou {@code atrasoMs} depois do primeiro registro pendente.
+ *
+ * {@link #adicionar(List)} devolve um stage que completa quando a gravação que contém aqueles
+ * registros terminou, para que a mensagem só seja confirmada ao Kafka depois disso.
+ * {@link #espacoLivre()} segura a leitura de novas mensagens enquanto há mais de
+ * {@code maxPendentes} registros aguardando ou em gravação.
+ */
+public class RegistroWriteBuffer {
+
+    /** Estimativa dos nomes de campos, {@code _id} e data de um documento. */
+    private static final int BYTES_FIXOS_POR_DOCUMENTO = 80;
+
+    private final Function<List<Registro>, Uni<Void>> escritor;
+    private final ScheduledExecutorService agendador;
+    private final int maxDocumentos;
+    private final long maxBytes;
+    private final long atrasoMs;
+    private final long maxPendentes;
+
+    private List<List<Registro>> partes = new ArrayList<>();
+    private int quantidade;
+    private List<CompletableFuture<Void>> confirmacoes = new ArrayList<>();
+    private long bytes;
+    private long emGravacao;
+    private ScheduledFuture<?> temporizador;
+    private final Deque<CompletableFuture<Void>> aguardandoEspaco = new ArrayDeque<>();
+
+    public RegistroWriteBuffer(Function<List<Registro>, Uni<Void>> escritor, ScheduledExecutorService agendador,
+            int maxDocumentos, long maxBytes, long atrasoMs, long maxPendentes) {
+        if (maxDocumentos < 1 || maxPendentes < maxDocumentos) {
+            throw new IllegalArgumentException("Limites do buffer inválidos: documentos=" + maxDocumentos + ", pendentes=" + maxPendentes);
+        }
+        this.escritor = escritor;
+        this.agendador = agendador;
+        this.maxDocumentos = maxDocumentos;
+        this.maxBytes = maxBytes;
+        this.atrasoMs = atrasoMs;
+        this.maxPendentes = maxPendentes;
+    }
+
+    public CompletionStage<Void> adicionar(List<Registro> lote) {
+        CompletableFuture<Void> gravado = new CompletableFuture<>();
+        Descarga descarga = null;
+        synchronized (this) {
+            partes.add(lote);
+            quantidade += lote.size();
+            bytes += estimarBytes(lote);
+            confirmacoes.add(gravado);
+            if (quantidade >= maxDocumentos || bytes >= maxBytes) {
+                descarga = retirar();
+            } else if (temporizador == null) {
+                temporizador = agendador.schedule(this::descarregarPorTempo, atrasoMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (descarga != null) {
+            gravar(descarga);
+        }
+        return gravado;
+    }
+
+    public synchronized CompletionStage<Void> espacoLivre() {
+        if (quantidade + emGravacao < maxPendentes) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> espera = new CompletableFuture<>();
+        aguardandoEspaco.add(espera);
+        return espera;
+    }
+
+    public synchronized int pendentes() {
+        return quantidade;
+    }
+
+    public synchronized long emGravacao() {
+        return emGravacao;
+    }
+
+    private void descarregarPorTempo() {
+        Descarga descarga;
+        synchronized (this) {
+            temporizador = null;
+            if (quantidade == 0) {
+                return;
+            }
+            descarga = retirar();
+        }
+        gravar(descarga);
+    }
+
+    /**
+     * Retira o conteúdo do buffer para gravação, com os lotes recebidos encadeados por
+     * {@link RegistroBatch#juntar(List)} em vez de copiados. Chamado com o lock do buffer.
+     */
+    private Descarga retirar() {
+        if (temporizador != null) {
+            temporizador.cancel(false);
+            temporizador = null;
+        }
+        Descarga descarga = new Descarga(RegistroBatch.juntar(partes), confirmacoes);
+        partes = new ArrayList<>();
+        quantidade = 0;
+        confirmacoes = new ArrayList<>();
+        bytes = 0;
+        emGravacao += descarga.registros().size();
+        return descarga;
+    }
+
+    private void gravar(Descarga descarga) {
+        Uni.createFrom().deferred(() -> escritor.apply(descarga.registros()))
+            .subscribe().with(
+                ok -> concluir(descarga, null),
+                erro -> concluir(descarga, erro));
+    }
+
+    private void concluir(Descarga descarga, Throwable erro) {
+        List<CompletableFuture<Void>> liberadas = new ArrayList<>();
+        synchronized (this) {
+            emGravacao -= descarga.registros().size();
+            while (!aguardandoEspaco.isEmpty() && quantidade + emGravacao < maxPendentes) {
+                liberadas.add(aguardandoEspaco.poll());
+            }
+        }
+        for (CompletableFuture<Void> confirmacao : descarga.confirmacoes()) {
+            if (erro == null) {
+                confirmacao.complete(null);
+            } else {
+                confirmacao.completeExceptionally(erro);
+            }
+        }
+        liberadas.forEach(espera -> espera.complete(null));
+    }
+
+    static long estimarBytes(List<Registro> lote) {
+        if (lote instanceof RegistroBatch colunas) {
+            // bytes UTF-8 em vez de caracteres; iguais para texto ASCII
+            return (long) BYTES_FIXOS_POR_DOCUMENTO * colunas.size() + colunas.bytesDados();
+        }
+        long total = 0;
+        for (Registro r : lote) {
+            total += BYTES_FIXOS_POR_DOCUMENTO + comprimento(r.nome()) + comprimento(r.email())
+                + comprimento(r.telefone()) + comprimento(r.cpf());
+        }
+        return total;
+    }
+
+    private static int comprimento(String valor) {
+        return valor == null ? 0 : valor.length();
+    }
+
+    private record Descarga(List<Registro> registros, List<CompletableFuture<Void>> confirmacoes) {
+    }
+}
@@ -0,0 +1,151 @@
+package br.com.sourcesystems.deserializer;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import br.com.sourcesystems.consumer.RegistroBatch;
+
+/**
+ * Decodifica o formato binário de lotes escrito pelo {@code RegistroBinaryEncoder} do
+ * csv-file-processor-pub: magic {@code 0xB1 'R' 'G'}, versão, quantidade em varint, uma coluna
+ * por campo de texto ({@code varint(tamanho + 1)} + UTF-8, 0 = null) e a coluna de
+ * {@code dataLeitura} em micros de época UTC, com deltas zigzag e bitmap opcional de nulos.
+ */
+public final class RegistroBinaryDecoder {
+
+    public static final byte MAGIC_0 = (byte) 0xB1;
+    public static final byte MAGIC_1 = 'R';
+    public static final byte MAGIC_2 = 'G';
+    public static final byte VERSAO = 1;
+
+    private static final long SEM_DATA = Long.MIN_VALUE;
+
+    private final byte[] dados;
+    private int posicao;
+
+    private RegistroBinaryDecoder(byte[] dados) {
+        this.dados = dados;
+    }
+
+    public static boolean isBinario(byte[] dados) {
+        return dados.length >= 4 && dados[0] == MAGIC_0 && dados[1] == MAGIC_1 && dados[2] == MAGIC_2;
+    }
+
+    /**
+     * Devolve um {@link RegistroBatch} que referencia os campos dentro de {@code dados}, sem
+     * criar Strings; o array não deve ser alterado depois.
+     */
+    public static RegistroBatch decode(byte[] dados) {
+        if (!isBinario(dados)) {
+            throw new IllegalArgumentException("Payload não está no formato binário de registros");
+        }
+        if (dados[3] != VERSAO) {
+            throw new IllegalArgumentException("Versão do formato binário não suportada: " + dados[3]);
+        }
+        RegistroBinaryDecoder decoder = new RegistroBinaryDecoder(dados);
+        decoder.posicao = 4;
+        long total = decoder.lerVarLong();
+        if (total < 0 || total > dados.length) {
+            throw new IllegalArgumentException("Quantidade de registros inválida: " + total);
+        }
+        int quantidade = (int) total;
+
+        int[] inicios = new int[quantidade * RegistroBatch.CAMPOS];
+        int[] tamanhos = new int[quantidade * RegistroBatch.CAMPOS];
+        for (int campo = 0; campo < RegistroBatch.CAMPOS; campo++) {
+            decoder.lerColunaTexto(quantidade, campo, inicios, tamanhos);
+        }
+        long[] datas = decoder.lerColunaDatas(quantidade);
+        if (datas == null) {
+            return new RegistroBatch(dados, inicios, tamanhos, null, null);
+        }
+        if (mesmaData(datas)) {
+            return new RegistroBatch(dados, inicios, tamanhos, deMicros(datas[0]), null);
+        }
+        return new RegistroBatch(dados, inicios, tamanhos, null, datas);
+    }
+
+    private static boolean mesmaData(long[] datas) {
+        for (long micros : datas) {
+            if (micros == SEM_DATA || micros != datas[0]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static LocalDateTime deMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+            (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+    /**
+     * Registra início e tamanho de cada valor da coluna, sem copiar os bytes do payload.
+     */
+    private void lerColunaTexto(int quantidade, int campo, int[] inicios, int[] tamanhos) {
+        for (int i = 0; i < quantidade; i++) {
+            int celula = i * RegistroBatch.CAMPOS + campo;
+            long prefixo = lerVarLong();
+            inicios[celula] = posicao;
+            if (prefixo == 0) {
+                tamanhos[celula] = -1;
+                continue;
+            }
+            long tamanho = prefixo - 1;
+            if (tamanho > dados.length - posicao) {
+                throw new IllegalArgumentException("Campo excede o tamanho do payload");
+            }
+            tamanhos[celula] = (int) tamanho;
+            posicao += (int) tamanho;
+        }
+    }
+
+    /**
+     * Micros de cada linha, com {@link #SEM_DATA} para null; {@code null} quando todas as datas
+     * são nulas.
+     */
+    private long[] lerColunaDatas(int quantidade) {
+        int flags = lerByte();
+        int bitmap = -1;
+        if ((flags & 1) != 0) {
+            bitmap = posicao;
+            posicao += (quantidade + 7) / 8;
+            if (posicao > dados.length) {
+                throw new IllegalArgumentException("Bitmap de nulos excede o tamanho do payload");
+            }
+        }
+        long[] valores = new long[quantidade];
+        boolean algumaData = false;
+        long anterior = 0;
+        for (int i = 0; i < quantidade; i++) {
+            if (bitmap >= 0 && (dados[bitmap + (i >>> 3)] & (1 << (i & 7))) != 0) {
+                valores[i] = SEM_DATA;
+                continue;
+            }
+            long zigzag = lerVarLong();
+            anterior += (zigzag >>> 1) ^ -(zigzag & 1);
+            valores[i] = anterior;
+            algumaData = true;
+        }
+        return algumaData || quantidade == 0 ? valores : null;
+    }
+
+    private int lerByte() {
+        if (posicao >= dados.length) {
+            throw new IllegalArgumentException("Fim inesperado do payload binário");
+        }
+        return dados[posicao++] & 0xFF;
+    }
+
+    private long lerVarLong() {
+        long resultado = 0;
+        for (int deslocamento = 0; deslocamento < 64; deslocamento += 7) {
+            int b = lerByte();
+            resultado |= (long) (b & 0x7F) << deslocamento;
+            if ((b & 0x80) == 0) {
+                return resultado;
+            }
+        }
+        throw new IllegalArgumentException("Varint malformado no payload binário");
+    }
+}
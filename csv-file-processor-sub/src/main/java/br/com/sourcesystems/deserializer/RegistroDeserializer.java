@@ -28,6 +28,9 @@ public class RegistroDeserializer implements Deserializer<List<Registro>> {
             return null;
         }
         try {
+            if (RegistroBinaryDecoder.isBinario(data)) {
+                return RegistroBinaryDecoder.decode(data);
+            }
             CollectionType type = mapper.getTypeFactory().constructCollectionType(List.class, Registro.class);
             List<Registro> result = mapper.readValue(data, type);
             return result;
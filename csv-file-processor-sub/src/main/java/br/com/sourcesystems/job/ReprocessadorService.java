@@ -1,20 +1,67 @@
 package br.com.sourcesystems.job;
 
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.stream.Stream;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.mongodb.FindOptions;
 import io.quarkus.mongodb.reactive.ReactiveMongoClient;
 import io.quarkus.mongodb.reactive.ReactiveMongoCollection;
+import io.quarkus.runtime.StartupEvent;
 import io.quarkus.scheduler.Scheduled;
 import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
 
+/**
+ * Regrava em {@code registros} os registros de {@code registros_falhos}.
+ *
+ * Cada instância reivindica grupos em lotes de {@code consumer.reprocess.chunk-size}: busca
+ * pelo índice {@code (status, disponivelEm)} os grupos pendentes já disponíveis e marca os
+ * escolhidos com um dono e um lease ({@code disponivelEm} no futuro) em um único
+ * {@code updateMany} condicional; só os grupos que a atualização de fato marcou para esse dono
+ * são processados, então várias instâncias drenam a coleção em paralelo sem pegar o mesmo
+ * grupo. Grupos reivindicados saem da faixa consultada, e a posição de cada passada fica no
+ * próprio índice: uma instância que parar no meio retoma do ponto em que estava, e os leases
+ * que ela deixou vencem e voltam para a fila.
+ *
+ * Grupos gravados por inteiro são removidos com um único {@code deleteMany}. Nos demais, só os
+ * documentos que falharam ficam no grupo, com {@code tentativas} incrementado e a próxima
+ * tentativa adiada em backoff exponencial; ao atingir {@code consumer.reprocess.max-attempts}
+ * o grupo passa a {@code ESGOTADO} e não é mais reivindicado. A remoção e os adiamentos só
+ * valem enquanto o grupo ainda pertence à reivindicação. Cada documento do grupo traz o
+ * {@code _id} atribuído pelo {@code DeadLetterSink}, então regravar um documento que já entrou
+ * (lease vencido depois da inserção, ou remoção que falhou) volta como chave duplicada em
+ * {@code _id} e conta como gravado.
+ */
 @ApplicationScoped
 public class ReprocessadorService {
 
@@ -25,65 +72,238 @@ public class ReprocessadorService {
     private static final String REGISTROS_FALHOS_COLLECTION = "registros_falhos";
     private static final String DOCUMENTOS_FIELD = "documento";
     private static final String ID_FIELD = "_id";
-    private static final int LOTE = 100;
-    private static final int PARALELISMO = 5; // disponível para uso futuro com flatMap
+    private static final String ERRO_FIELD = "erro";
+    private static final String STATUS_FIELD = "status";
+    private static final String TENTATIVAS_FIELD = "tentativas";
+    private static final String DISPONIVEL_FIELD = "disponivelEm";
+    private static final String DONO_FIELD = "dono";
+    private static final String PENDENTE = "PENDENTE";
+    private static final String ESGOTADO = "ESGOTADO";
+    private static final String INDICE = "registros_falhos_disponiveis";
+    private static final int CHAVE_DUPLICADA = 11000;
+
+    private static final InsertManyOptions INSERCAO_SEM_ORDEM = new InsertManyOptions().ordered(false);
+
+    @ConfigProperty(name = "consumer.reprocess.chunk-size", defaultValue = "100")
+    private int tamanhoLote;
+
+    @ConfigProperty(name = "consumer.reprocess.parallelism", defaultValue = "5")
+    private int paralelismo;
+
+    @ConfigProperty(name = "consumer.reprocess.lease", defaultValue = "2m")
+    private Duration lease;
+
+    @ConfigProperty(name = "consumer.reprocess.max-attempts", defaultValue = "10")
+    private int maxTentativas;
+
+    @ConfigProperty(name = "consumer.reprocess.backoff", defaultValue = "30s")
+    private Duration intervaloBase;
+
+    @ConfigProperty(name = "consumer.reprocess.max-backoff", defaultValue = "1h")
+    private Duration intervaloMaximo;
 
     private final ReactiveMongoClient mongoClient;
 
-    public ReprocessadorService(ReactiveMongoClient mongoClient) {
+    private final MeterRegistry meterRegistry;
+
+    private final String instancia = ManagementFactory.getRuntimeMXBean().getName();
+
+    private Counter reprocessados;
+
+    private Counter adiados;
+
+    private Counter esgotados;
+
+    public ReprocessadorService(ReactiveMongoClient mongoClient, MeterRegistry meterRegistry) {
         this.mongoClient = mongoClient;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void initMetrics() {
+        reprocessados = meterRegistry.counter("consumer.reprocess.registros");
+        adiados = meterRegistry.counter("consumer.reprocess.adiados");
+        esgotados = meterRegistry.counter("consumer.reprocess.esgotados");
     }
 
-    @Scheduled(every = "{schedule.interval}")
-    public void reprocessarFalhas() {
+    /**
+     * Cria o índice usado na reivindicação e completa os grupos gravados antes dos campos de
+     * controle, para que entrem na fila já disponíveis.
+     */
+    void onStart(@Observes StartupEvent ev) {
+        ReactiveMongoCollection<Document> falhos = getCollection(REGISTROS_FALHOS_COLLECTION);
+        falhos.createIndex(Indexes.ascending(STATUS_FIELD, DISPONIVEL_FIELD), new IndexOptions().name(INDICE))
+            .chain(() -> falhos.updateMany(Filters.exists(STATUS_FIELD, false), Updates.combine(
+                Updates.set(STATUS_FIELD, PENDENTE),
+                Updates.set(TENTATIVAS_FIELD, 0),
+                Updates.set(DISPONIVEL_FIELD, new Date(0)))))
+            .subscribe().with(
+                resultado -> {
+                    if (resultado.getModifiedCount() > 0) {
+                        LOG.infof("%d grupos de registros_falhos preparados para reprocessamento", resultado.getModifiedCount());
+                    }
+                },
+                err -> LOG.error("Erro ao preparar registros_falhos para reprocessamento", err));
+    }
+
+    /**
+     * Drena os grupos disponíveis: reivindicações em sequência, até {@code paralelismo} lotes
+     * processados ao mesmo tempo. Uma passada que ainda não terminou faz a seguinte ser pulada.
+     */
+    @Scheduled(every = "{schedule.interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    public Uni<Void> reprocessarFalhas() {
+        return Multi.createBy().repeating().uni(this::reivindicar).whilst(r -> r.candidatos() > 0)
+            .onItem().transformToUni(this::processarLote).merge(paralelismo)
+            .collect().with(Collectors.summingInt(Integer::intValue))
+            .onItem().invoke(total -> {
+                if (total > 0) {
+                    LOG.infof("Reprocessamento concluído: %d grupos de registros_falhos processados", total);
+                }
+            })
+            .onFailure().invoke(err -> LOG.error("Erro ao reprocessar lotes", err))
+            .onFailure().recoverWithNull()
+            .replaceWithVoid();
+    }
+
+    private Uni<Reivindicacao> reivindicar() {
         ReactiveMongoCollection<Document> falhosCollection = getCollection(REGISTROS_FALHOS_COLLECTION);
+        Date agora = new Date();
+        String dono = instancia + "/" + UUID.randomUUID();
+        Bson disponiveis = Filters.and(Filters.eq(STATUS_FIELD, PENDENTE), Filters.lte(DISPONIVEL_FIELD, agora));
+        FindOptions candidatos = new FindOptions()
+            .filter(disponiveis)
+            .sort(Sorts.ascending(DISPONIVEL_FIELD))
+            .limit(tamanhoLote)
+            .projection(Projections.include(ID_FIELD));
 
-        Multi.createFrom().publisher(falhosCollection.find())
-        .group().intoLists().of(LOTE)
-        .onItem().transformToUni(this::processarLote)
-        .merge(PARALELISMO) 
-        .subscribe().with(
-            ok -> LOG.info("Lotes reprocessados com sucesso"),
-            err -> LOG.error("Erro ao reprocessar lotes", err)
-        );
-    }   
-
-    private Uni<Void> processarLote(List<Document> lote) {
+        return falhosCollection.find(candidatos)
+            .map(doc -> doc.get(ID_FIELD))
+            .collect().asList()
+            .chain(ids -> {
+                if (ids.isEmpty()) {
+                    return Uni.createFrom().item(new Reivindicacao(0, dono, List.of()));
+                }
+                Bson marcar = Updates.combine(
+                    Updates.set(DISPONIVEL_FIELD, new Date(agora.getTime() + lease.toMillis())),
+                    Updates.set(DONO_FIELD, dono));
+                // outra instância pode ter reivindicado parte dos candidatos entre a busca e a marcação
+                return falhosCollection.updateMany(Filters.and(Filters.in(ID_FIELD, ids), disponiveis), marcar)
+                    .chain(() -> falhosCollection.find(Filters.and(Filters.in(ID_FIELD, ids), Filters.eq(DONO_FIELD, dono)))
+                        .collect().asList())
+                    .map(lote -> new Reivindicacao(ids.size(), dono, lote));
+            });
+    }
+
+    private Uni<Integer> processarLote(Reivindicacao reivindicacao) {
+        List<Document> lote = reivindicacao.lote();
         if (lote.isEmpty()) {
-            return Uni.createFrom().voidItem();
+            return Uni.createFrom().item(0);
         }
 
-        List<Document> documentosParaInserir = lote.stream()
-            .flatMap(this::extrairDocumentos)
-            .filter(Objects::nonNull)
-            .toList();
-
-        ReactiveMongoCollection<Document> registrosCollection = getCollection(REGISTROS_COLLECTION);
-        ReactiveMongoCollection<Document> falhosCollection = getCollection(REGISTROS_FALHOS_COLLECTION);
+        List<Document> documentosParaInserir = new ArrayList<>();
+        List<Integer> origem = new ArrayList<>();
+        for (int i = 0; i < lote.size(); i++) {
+            for (Document documento : extrairDocumentos(lote.get(i))) {
+                documentosParaInserir.add(documento);
+                origem.add(i);
+            }
+        }
 
-        if (documentosParaInserir == null || documentosParaInserir.isEmpty()) {
+        if (documentosParaInserir.isEmpty()) {
             LOG.warn("Nenhum documento a inserir para o lote: " + lote);
-            return Uni.createFrom().voidItem(); // ou Uni.createFrom().nullItem()
+            return concluir(reivindicacao, Map.of());
         }
 
-        return registrosCollection.insertMany(documentosParaInserir)
-            .onItem().transformToUni(v -> removerDocumentosFalhos(falhosCollection, lote))
-            .onItem().invoke(() -> LOG.info("Lote processado e removido da fila de falhas"))
-            .onFailure().invoke(err -> LOG.error("Erro ao processar lote", err))
-            .replaceWithVoid();
+        return getCollection(REGISTROS_COLLECTION).insertMany(documentosParaInserir, INSERCAO_SEM_ORDEM)
+            .map(ok -> Map.<Integer, Falhas>of())
+            .onFailure().recoverWithItem(err -> falhasPorGrupo(err, documentosParaInserir, origem))
+            .chain(falhas -> {
+                reprocessados.increment(documentosParaInserir.size() - falhas.values().stream().mapToInt(f -> f.documentos().size()).sum());
+                return concluir(reivindicacao, falhas);
+            });
     }
 
-    private Uni<Void> removerDocumentosFalhos(ReactiveMongoCollection<Document> falhosCollection, List<Document> lote) {
-        List<Document> filtros = lote.stream()
-            .map(doc -> new Document(ID_FIELD, doc.getObjectId(ID_FIELD)))
-            .toList();
+    /**
+     * Separa os documentos que não foram gravados por grupo de origem. Chave duplicada conta
+     * como gravado; uma falha do comando inteiro conta como falha de todos os documentos.
+     */
+    private Map<Integer, Falhas> falhasPorGrupo(Throwable err, List<Document> documentos, List<Integer> origem) {
+        Map<Integer, Falhas> falhas = new LinkedHashMap<>();
+        if (err instanceof MongoBulkWriteException bulk) {
+            for (BulkWriteError erro : bulk.getWriteErrors()) {
+                if (erro.getCode() != CHAVE_DUPLICADA) {
+                    falhas.computeIfAbsent(origem.get(erro.getIndex()), g -> new Falhas())
+                        .adicionar(documentos.get(erro.getIndex()), "E" + erro.getCode() + " " + erro.getMessage());
+                }
+            }
+        } else {
+            LOG.error("Erro ao inserir lote reprocessado", err);
+            for (int i = 0; i < documentos.size(); i++) {
+                falhas.computeIfAbsent(origem.get(i), g -> new Falhas())
+                    .adicionar(documentos.get(i), err.getMessage());
+            }
+        }
+        return falhas;
+    }
 
-        return falhosCollection.deleteMany(new Document("$or", filtros)).replaceWithVoid();
+    /**
+     * Remove de uma vez os grupos gravados por inteiro e adia os demais, mantendo neles só os
+     * documentos que falharam. A remoção e as atualizações só valem enquanto o grupo ainda
+     * pertence a esta reivindicação.
+     */
+    private Uni<Integer> concluir(Reivindicacao reivindicacao, Map<Integer, Falhas> falhas) {
+        List<Document> lote = reivindicacao.lote();
+        ReactiveMongoCollection<Document> falhosCollection = getCollection(REGISTROS_FALHOS_COLLECTION);
+        List<Object> concluidos = new ArrayList<>();
+        List<WriteModel<Document>> adiamentos = new ArrayList<>();
+        Date agora = new Date();
+        for (int i = 0; i < lote.size(); i++) {
+            Document grupo = lote.get(i);
+            Falhas falha = falhas.get(i);
+            if (falha == null) {
+                concluidos.add(grupo.get(ID_FIELD));
+                continue;
+            }
+            int tentativas = Objects.requireNonNullElse(grupo.getInteger(TENTATIVAS_FIELD), 0) + 1;
+            Bson status;
+            if (tentativas >= maxTentativas) {
+                esgotados.increment();
+                status = Updates.set(STATUS_FIELD, ESGOTADO);
+            } else {
+                adiados.increment();
+                status = Updates.set(DISPONIVEL_FIELD, new Date(agora.getTime() + intervalo(tentativas).toMillis()));
+            }
+            adiamentos.add(new UpdateOneModel<>(
+                Filters.and(Filters.eq(ID_FIELD, grupo.get(ID_FIELD)), Filters.eq(DONO_FIELD, reivindicacao.dono())),
+                Updates.combine(
+                    status,
+                    Updates.set(TENTATIVAS_FIELD, tentativas),
+                    Updates.set(DOCUMENTOS_FIELD, falha.documentos()),
+                    Updates.set(ERRO_FIELD, falha.erro()),
+                    Updates.unset(DONO_FIELD))));
+        }
+
+        Uni<Void> remocao = concluidos.isEmpty()
+            ? Uni.createFrom().voidItem()
+            : falhosCollection.deleteMany(Filters.and(Filters.in(ID_FIELD, concluidos), Filters.eq(DONO_FIELD, reivindicacao.dono())))
+                .replaceWithVoid();
+        Uni<Void> adiamento = adiamentos.isEmpty()
+            ? Uni.createFrom().voidItem()
+            : falhosCollection.bulkWrite(adiamentos).replaceWithVoid();
+        return remocao.chain(() -> adiamento)
+            .onItem().invoke(() -> LOG.infof("Lote reprocessado: %d grupos removidos da fila de falhas, %d adiados",
+                concluidos.size(), adiamentos.size()))
+            .replaceWith(lote.size());
     }
 
-    private Stream<Document> extrairDocumentos(Document doc) {
+    private Duration intervalo(int tentativas) {
+        Duration intervalo = intervaloBase.multipliedBy(1L << Math.min(tentativas - 1, 30));
+        return intervalo.compareTo(intervaloMaximo) > 0 ? intervaloMaximo : intervalo;
+    }
+
+    private List<Document> extrairDocumentos(Document doc) {
         List<Document> documentos = doc.getList(DOCUMENTOS_FIELD, Document.class);
-        return documentos == null ? Stream.empty() : documentos.stream();
+        return documentos == null ? List.of() : documentos.stream().filter(Objects::nonNull).toList();
     }
 
     private ReactiveMongoCollection<Document> getCollection(String nome) {
@@ -91,4 +311,31 @@ public class ReprocessadorService {
             .getDatabase(DATABASE_NAME)
             .getCollection(nome, Document.class);
     }
-}
\ No newline at end of file
+
+    /**
+     * Resultado de uma reivindicação: quantos grupos estavam disponíveis na busca e quais deles
+     * ficaram com este dono.
+     */
+    private record Reivindicacao(int candidatos, String dono, List<Document> lote) {
+    }
+
+    /** Documentos de um grupo que não foram gravados e o último erro entre eles. */
+    private static final class Falhas {
+
+        private final List<Document> documentos = new ArrayList<>();
+        private String erro;
+
+        void adicionar(Document documento, String erro) {
+            documentos.add(documento);
+            this.erro = erro;
+        }
+
+        List<Document> documentos() {
+            return documentos;
+        }
+
+        String erro() {
+            return erro;
+        }
+    }
+}